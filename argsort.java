@@ -0,0 +1,196 @@
+package quicksort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author cyrus
+ * Class argsort sorts an index permutation by a key column, for columnar data held in
+ * several parallel primitive arrays.
+ * <p>
+ * Each row is packed into one long, key in the high 32 bits and row index in the low 32,
+ * so sorting the longs orders rows by key and breaks ties by index. The sort is therefore
+ * stable and never boxes. Large inputs use quicksort.radixSortHigh, an LSD radix sort
+ * over the four key bytes, small ones Arrays.sort. The row indices are then read back
+ * out as the permutation.
+ * <p>
+ * applyPermutation reorders other columns with that permutation in place, following each
+ * cycle once and swapping along it, in O(n) time with no extra arrays.
+ */
+public class argsort {
+
+	/**
+	 * Returns the permutation that sorts keys, leaving keys unchanged.
+	 * keys[perm[0]] <= keys[perm[1]] <= ..., and equal keys keep their original order.
+	 * @param keys key column
+	 * @return perm, a permutation of 0 to keys.length - 1
+	 */
+	public static int[] argsort(int keys[]) {
+		int n = keys.length;
+		long[] packed = new long[n];
+		for (int i = 0; i < n; i++) {
+			packed[i] = (long) keys[i] << 32 | i;
+		}
+
+		if (n < quicksort.RADIX_THRESHOLD) {
+			Arrays.sort(packed);
+		} else {
+			quicksort.radixSortHigh(packed);
+		}
+
+		int[] perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			perm[i] = (int) packed[i];
+		}
+		return perm;
+	}
+
+	/**
+	 * Swaps entries i and j of every column being permuted.
+	 */
+	interface columnSwap {
+		void swap(int i, int j);
+	}
+
+	/**
+	 * Reorders each column in place so that column[i] becomes the old column[perm[i]].
+	 * At least one column is required, so a call with no columns does not compile.
+	 * @param perm a permutation of 0 to n - 1, e.g. from argsort
+	 * @param column first column of length n
+	 * @param more further columns of length n
+	 */
+	public static void applyPermutation(int perm[], int[] column, int[]... more) {
+		applyCycles(perm, (i, j) -> {
+			swap(column, i, j);
+			for (int[] c : more) {
+				swap(c, i, j);
+			}
+		});
+	}
+
+	/**
+	 * applyPermutation for long columns.
+	 * @param perm a permutation of 0 to n - 1, e.g. from argsort
+	 * @param column first column of length n
+	 * @param more further columns of length n
+	 */
+	public static void applyPermutation(int perm[], long[] column, long[]... more) {
+		applyCycles(perm, (i, j) -> {
+			swap(column, i, j);
+			for (long[] c : more) {
+				swap(c, i, j);
+			}
+		});
+	}
+
+	/**
+	 * applyPermutation for double columns.
+	 * @param perm a permutation of 0 to n - 1, e.g. from argsort
+	 * @param column first column of length n
+	 * @param more further columns of length n
+	 */
+	public static void applyPermutation(int perm[], double[] column, double[]... more) {
+		applyCycles(perm, (i, j) -> {
+			swap(column, i, j);
+			for (double[] c : more) {
+				swap(c, i, j);
+			}
+		});
+	}
+
+	/**
+	 * Walks every cycle of perm once. Along a cycle start, perm[start], ... each step
+	 * swaps the current entry with the next one, which leaves every column holding
+	 * column[i] = old column[perm[i]]. perm is used as scratch (visited entries are
+	 * complemented) and restored before returning, so it must not be shared with
+	 * another thread during the call.
+	 * @param perm a permutation of 0 to n - 1
+	 * @param columns swaps the same pair of entries in every column
+	 */
+	private static void applyCycles(int perm[], columnSwap columns) {
+		int n = perm.length;
+		for (int start = 0; start < n; start++) {
+			if (perm[start] < 0) {
+				continue;
+			}
+			int j = start;
+			int next = perm[j];
+			while (next != start) {
+				columns.swap(j, next);
+				perm[j] = ~next;
+				j = next;
+				next = perm[j];
+			}
+			perm[j] = ~next;
+		}
+		for (int i = 0; i < n; i++) {
+			perm[i] = ~perm[i];
+		}
+	}
+
+	private static void swap(int a[], int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	private static void swap(long a[], int i, int j) {
+		long t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	private static void swap(double a[], int i, int j) {
+		double t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/**
+	 * Sorts the key column and reorders the other columns to match, all in place.
+	 * @param keys key column
+	 * @param columns other int columns of the same length
+	 * @return the permutation that was applied
+	 */
+	public static int[] sortByKey(int keys[], int[]... columns) {
+		int[] perm = argsort(keys);
+		applyPermutation(perm, keys, columns);
+		return perm;
+	}
+
+	/**
+	 * main method sorts a random three-column table by its key column and checks the result.
+	 * @param args "<rows>"
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		Random rd = new Random(sortBenchmark.SEED);
+		int[] keys = new int[n];
+		long[] ids = new long[n];
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = rd.nextInt(n);
+			ids[i] = i;
+			values[i] = keys[i] * 0.5;
+		}
+
+		long start = System.nanoTime();
+		int[] perm = argsort(keys);
+		long sortNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		applyPermutation(perm, keys);
+		applyPermutation(perm, ids);
+		applyPermutation(perm, values);
+		long applyNanos = System.nanoTime() - start;
+
+		//Rows must be sorted by key, stable by original id, and values must follow their keys.
+		for (int i = 1; i < n; i++) {
+			if (keys[i - 1] > keys[i] || (keys[i - 1] == keys[i] && ids[i - 1] > ids[i]) || values[i] != keys[i] * 0.5) {
+				System.out.println("Row " + i + " is out of order.");
+				return;
+			}
+		}
+		System.out.println("argsort of " + n + " rows took " + sortNanos / 1000000 + " ms, applying it to 3 columns took "
+				+ applyNanos / 1000000 + " ms.");
+	}
+}
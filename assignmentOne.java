@@ -4,6 +4,8 @@ import java.io.*;
 import java.util.*;
 import java.time.*;
 
+import quicksort.quicksort;
+
 /**
  * @author cyrus
  * Main class for Programming Project 1.
@@ -141,6 +143,187 @@ class assignmentOne {
 			}
 			return false;
 		}
+		
+		/**
+		 * Method evaluates whether the Pair occurs in a hashed Blacklist.
+		 * Unlike the List version, (p, q) and (q, p) are the same Pair.
+		 * @param blacklist the Blacklist to evaluate inclusion in
+		 * @return true if the Pair occurs in blacklist, false otherwise.
+		 */
+		public boolean checkBlacklist (Blacklist blacklist) {
+			return blacklist.contains(this.p1, this.p2);
+		}
+	}
+	
+	
+	/**
+	 * @author cyrus
+	 * Helper class Blacklist is a set of excluded Pairs with O(1) lookups.
+	 * <p>
+	 * Each Point is packed into a long (x in the high 32 bits, y in the low 32 bits) and
+	 * each Pair is canonicalized so the smaller packed Point comes first, which makes
+	 * (p, q) and (q, p) the same entry. The packed keys live in a primitive open-addressing
+	 * table with linear probing, so lookups never allocate or box.
+	 */
+	public static class Blacklist {
+		//Empty slot marker. The Pair it would stand for is tracked separately.
+		private static final long EMPTY = Long.MIN_VALUE;
+		
+		//Interleaved table: slot i holds keys[2i] (smaller Point) and keys[2i+1] (larger Point).
+		private long[] keys;
+		private int mask;
+		private int size;
+		private boolean containsEmptyKey;
+		
+		/**
+		 * Constructor creates an empty Blacklist.
+		 */
+		Blacklist() {
+			this(16);
+		}
+		
+		/**
+		 * Constructor creates an empty Blacklist sized for an expected number of Pairs.
+		 * @param expectedPairs number of Pairs expected to be added
+		 */
+		Blacklist(int expectedPairs) {
+			int capacity = 16;
+			while (capacity < expectedPairs * 2) {
+				capacity <<= 1;
+			}
+			allocate(capacity);
+		}
+		
+		/**
+		 * Constructor creates a Blacklist holding every Pair in a list.
+		 * @param pairs the Pairs to be blacklisted
+		 */
+		Blacklist(List<Pair> pairs) {
+			this(pairs.size());
+			for (Pair p : pairs) {
+				add(p);
+			}
+		}
+		
+		private void allocate(int capacity) {
+			keys = new long[capacity * 2];
+			Arrays.fill(keys, EMPTY);
+			mask = capacity - 1;
+		}
+		
+		/**
+		 * Packs a Point into a long.
+		 */
+		static long pack(Point p) {
+			return ((long) p.x << 32) | (p.y & 0xFFFFFFFFL);
+		}
+		
+		/**
+		 * Hashes a canonical packed pair to a slot.
+		 */
+		private int slot(long a, long b) {
+			long h = a * 0x9E3779B97F4A7C15L + b;
+			h ^= (h >>> 33);
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= (h >>> 33);
+			return (int) h & mask;
+		}
+		
+		/**
+		 * Adds a Pair to the Blacklist. Empty Pairs are ignored.
+		 * @param pair the Pair to be blacklisted
+		 */
+		public void add(Pair pair) {
+			if (pair.p1 != null && pair.p2 != null) {
+				add(pair.p1, pair.p2);
+			}
+		}
+		
+		/**
+		 * Adds the Pair (p, q) to the Blacklist.
+		 * @param p Point 1
+		 * @param q Point 2
+		 * @return true if the Pair was not already blacklisted.
+		 */
+		public boolean add(Point p, Point q) {
+			long a = pack(p);
+			long b = pack(q);
+			if (a > b) {
+				long t = a; a = b; b = t;
+			}
+			if (a == EMPTY && b == EMPTY) {
+				boolean added = !containsEmptyKey;
+				containsEmptyKey = true;
+				return added;
+			}
+			
+			int i = slot(a, b);
+			while (keys[2 * i] != EMPTY || keys[2 * i + 1] != EMPTY) {
+				if (keys[2 * i] == a && keys[2 * i + 1] == b) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[2 * i] = a;
+			keys[2 * i + 1] = b;
+			size++;
+			
+			//Keep the load factor at or below 1/2.
+			if (size * 2 > mask + 1) {
+				rehash();
+			}
+			return true;
+		}
+		
+		/**
+		 * Method evaluates whether the Pair (p, q) is blacklisted, in either order.
+		 * @param p Point 1
+		 * @param q Point 2
+		 * @return true if the Pair is blacklisted, false otherwise.
+		 */
+		public boolean contains(Point p, Point q) {
+			long a = pack(p);
+			long b = pack(q);
+			if (a > b) {
+				long t = a; a = b; b = t;
+			}
+			if (a == EMPTY && b == EMPTY) {
+				return containsEmptyKey;
+			}
+			
+			int i = slot(a, b);
+			while (keys[2 * i] != EMPTY || keys[2 * i + 1] != EMPTY) {
+				if (keys[2 * i] == a && keys[2 * i + 1] == b) {
+					return true;
+				}
+				i = (i + 1) & mask;
+			}
+			return false;
+		}
+		
+		/**
+		 * @return the number of blacklisted Pairs.
+		 */
+		public int size() {
+			return size + (containsEmptyKey ? 1 : 0);
+		}
+		
+		private void rehash() {
+			long[] old = keys;
+			allocate((mask + 1) * 2);
+			for (int j = 0; j < old.length; j += 2) {
+				long a = old[j];
+				long b = old[j + 1];
+				if (a != EMPTY || b != EMPTY) {
+					int i = slot(a, b);
+					while (keys[2 * i] != EMPTY || keys[2 * i + 1] != EMPTY) {
+						i = (i + 1) & mask;
+					}
+					keys[2 * i] = a;
+					keys[2 * i + 1] = b;
+				}
+			}
+		}
 	}
 	
 	
@@ -193,19 +376,7 @@ class assignmentOne {
 	 * @return the list of Points sorted by x-coordinate 
 	 */
 	public static List<Point> sortX (List<Point> in) {
-		//Declare the returnvariable
-		List <Point> out = new ArrayList<>(in);
-		
-		//Sort the List collection with the parent class method Collections.sort()
-		//Feed sort() a comparator that compares p1.x, p2.x
-		Collections.sort(out, new Comparator<Point>() {
-		    @Override
-		    public int compare(Point p1, Point p2) {
-		        return Double.compare(p1.x, p2.x);
-		    }
-		});
-		
-		return out;
+		return sortPacked(in, true);
 	}
 	
 	/**
@@ -214,16 +385,57 @@ class assignmentOne {
 	 * @return the list of Points sorted by y-coordinate.
 	 */
 	public static List<Point> sortY (List<Point> in) {
-		//See sortX. This method is identical with the exception of the comparator,
+		//See sortX. This method is identical with the exception of the key,
 		//which looks at y instead of x.
-		List <Point> out = new ArrayList<>(in);
-		Collections.sort(out, new Comparator<Point>() {
-		    @Override
-		    public int compare(Point p1, Point p2) {
-		        return Double.compare(p1.y, p2.y);
-		    }
-		});
+		return sortPacked(in, false);
+	}
+	
+	//Lists shorter than this are insertion sorted instead of radix sorted.
+	static final int PACKED_INSERTION_CUTOFF = 64;
+	
+	/**
+	 * Method sorts a list of Points by one coordinate without a Comparator.
+	 * Each Point is packed into a long key, coordinate in the high 32 bits and its
+	 * position in the input in the low 32 bits, so the keys can be sorted as primitives.
+	 * The keys are sorted with quicksort.radixSortHigh, an LSD radix sort over the
+	 * coordinate bytes only; because radix sort is stable and the keys start out in
+	 * input order, ties keep their input order, exactly like the stable Collections.sort
+	 * this replaces.
+	 * @param in the list of Points to be sorted
+	 * @param byX sort by x-coordinate if true, by y-coordinate otherwise
+	 * @return a new list of Points sorted by the requested coordinate
+	 */
+	static List<Point> sortPacked (List<Point> in, boolean byX) {
+		Point[] points = in.toArray(new Point[0]);
+		int n = points.length;
+		
+		//Pack (coordinate, index) into one long per Point.
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			long coord = byX ? points[i].x : points[i].y;
+			keys[i] = (coord << 32) | i;
+		}
+		
+		if (n < PACKED_INSERTION_CUTOFF) {
+			//Keys are unique, so a plain insertion sort is stable here.
+			for (int i = 1; i < n; i++) {
+				long key = keys[i];
+				int j = i - 1;
+				while (j >= 0 && keys[j] > key) {
+					keys[j + 1] = keys[j];
+					j--;
+				}
+				keys[j + 1] = key;
+			}
+		} else {
+			quicksort.radixSortHigh(keys);
+		}
 		
+		//Apply the permutation.
+		List<Point> out = new ArrayList<Point>(n);
+		for (int i = 0; i < n; i++) {
+			out.add(points[(int) keys[i]]);
+		}
 		return out;
 	}
 	
@@ -300,6 +512,18 @@ class assignmentOne {
 	 * @return closestPair, the closest Pair not in the blacklist.
 	 */
 	public static Pair bruteDistanceBlacklist (List<Point> pointArray, boolean quiet, List<Pair> blacklist) {
+		return bruteDistanceBlacklist(pointArray, quiet, new Blacklist(blacklist));
+	}
+	
+	/**
+	 * Method is just like bruteDistance, but observes a hashed Blacklist of Pairs.
+	 * @param pointArray list of Points to be evaluated.
+	 * @param quiet suppress stats if true.
+	 * @param blacklist Blacklist of Pairs. A Pair in the blacklist, in either order, will
+	 * 					be ignored when comparing distances and will never be returned.
+	 * @return closestPair, the closest Pair not in the blacklist.
+	 */
+	public static Pair bruteDistanceBlacklist (List<Point> pointArray, boolean quiet, Blacklist blacklist) {
 		//Operates as per bruteDistance above...
 		Pair closestPair = new Pair();
 		double minDistance = -1;
@@ -434,6 +658,19 @@ class assignmentOne {
 	 * @return the closest non-blacklisted Pair.
 	 */
 	public static Pair dncDistanceBlacklist(List<Point> pointArray, List<Pair> blacklist) {
+		return dncDistanceBlacklist(pointArray, new Blacklist(blacklist));
+	}
+	
+	/**
+	 * Method implements dncDistance as per above, but observes a hashed Blacklist.
+	 * Each blacklist check is O(1), so the closest m pairs can be found for large m.
+	 * 
+	 * @param pointArray list of Points to be evaluated.
+	 * @param blacklist Blacklist of Pairs. Blacklisted Pairs, in either order, are ignored 
+	 * 					when calculating distance and will never be returned.
+	 * @return the closest non-blacklisted Pair.
+	 */
+	public static Pair dncDistanceBlacklist(List<Point> pointArray, Blacklist blacklist) {
 		//All as per dncDistance above...
 		globalRecursionCounter++;
 		Pair closestDNC = new Pair();
@@ -727,11 +964,13 @@ class assignmentOne {
 			if (m > 1 && m < pointArray.size()) {
 				List <Pair> closestPairs = new ArrayList<Pair>();
 				List <Point> cloneArray = new ArrayList<Point>(pointArray);
+				Blacklist blacklist = new Blacklist(m);
 				
 
 				for (int a = 0; a < m; a++) {
-					Pair closestPair = dncDistanceBlacklist(cloneArray, closestPairs);
+					Pair closestPair = dncDistanceBlacklist(cloneArray, blacklist);
 					closestPairs.add(closestPair);
+					blacklist.add(closestPair);
 				}
 				
 				//Print results and write to infile
@@ -0,0 +1,280 @@
+package quicksort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author cyrus
+ * Class batchSorter sorts large batches of small and medium int arrays across a
+ * work-stealing pool.
+ * <p>
+ * Forking one task per array would cost more than sorting most of them, so arrays are
+ * first packed, in order, into groups of about GROUP_ELEMENTS keys. The groups are split
+ * recursively over the fork/join pool, so idle workers steal half of a busy worker's
+ * remaining groups. Within a group each array is sorted on the worker's own thread:
+ * 	- up to NETWORK_MAX keys: a Batcher odd-even merge sorting network made of branchless
+ * 	  min/max compare-exchanges, so random small arrays cause no branch mispredictions;
+ * 	- larger arrays: quicksort.introSort.
+ * Every call returns its own batchStats; the sorter also keeps running totals, so one
+ * instance can be shared by many request threads and report aggregate arrays/sec.
+ */
+public class batchSorter {
+
+	/**
+	 * Arrays with at most this many keys are sorted by a sorting network.
+	 */
+	static final int NETWORK_MAX = 16;
+
+	/**
+	 * Target number of keys per task.
+	 */
+	static final int GROUP_ELEMENTS = 1 << 15;
+
+	/**
+	 * Fixed cost of one array, in keys, when filling a group, so batches of empty or
+	 * one-key arrays still form bounded groups.
+	 */
+	static final int ARRAY_OVERHEAD = 8;
+
+	/**
+	 * NETWORKS[n] holds the compare-exchange pairs (i, j), i < j, that sort n keys.
+	 */
+	static final int[][] NETWORKS = new int[NETWORK_MAX + 1][];
+
+	static {
+		//Batcher's network for the smallest power of two >= n, minus every comparator that
+		//touches an index >= n: those keys act as padding of +infinity, which never moves.
+		for (int n = 0; n <= NETWORK_MAX; n++) {
+			int size = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+			List<Integer> network = new ArrayList<Integer>();
+			for (int p = 1; p < size; p <<= 1) {
+				for (int k = p; k >= 1; k >>= 1) {
+					for (int j = k % p; j + k < size; j += 2 * k) {
+						for (int i = 0; i < Math.min(k, size - j - k); i++) {
+							if ((i + j) / (2 * p) == (i + j + k) / (2 * p) && i + j + k < n) {
+								network.add(i + j);
+								network.add(i + j + k);
+							}
+						}
+					}
+				}
+			}
+			NETWORKS[n] = network.stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final LongAdder arraysSorted = new LongAdder();
+	private final LongAdder keysSorted = new LongAdder();
+	private final LongAdder nanosSpent = new LongAdder();
+
+	/**
+	 * Batch sorter on the common pool.
+	 */
+	public batchSorter() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool the work-stealing pool to sort on
+	 */
+	public batchSorter(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Counts and timing of one sortAll call, or the running totals of a sorter.
+	 */
+	public static class batchStats {
+		public final long arrays;
+		public final long keys;
+		public final long nanos;
+
+		batchStats(long arrays, long keys, long nanos) {
+			this.arrays = arrays;
+			this.keys = keys;
+			this.nanos = nanos;
+		}
+
+		public double arraysPerSecond() {
+			return nanos == 0 ? 0 : arrays * 1e9 / nanos;
+		}
+
+		public double keysPerSecond() {
+			return nanos == 0 ? 0 : keys * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d arrays (%d keys) in %d ms: %.0f arrays/sec, %.0f keys/sec",
+					arrays, keys, nanos / 1000000, arraysPerSecond(), keysPerSecond());
+		}
+	}
+
+	/**
+	 * Sorts every array in place.
+	 * @param arrays arrays to sort; each array should appear only once
+	 * @return counts and wall-clock time of this call
+	 */
+	public batchStats sortAll(List<int[]> arrays) {
+		return sortAll(arrays.toArray(new int[0][]));
+	}
+
+	/**
+	 * Sorts every array in place.
+	 * @param arrays arrays to sort; each array should appear only once
+	 * @return counts and wall-clock time of this call
+	 */
+	public batchStats sortAll(int[][] arrays) {
+		long start = System.nanoTime();
+
+		//Pack consecutive arrays into groups; groupEnds[g] is the exclusive end of group g.
+		int[] groupEnds = new int[arrays.length];
+		int groups = 0;
+		long keys = 0;
+		long filled = 0;
+		for (int i = 0; i < arrays.length; i++) {
+			keys += arrays[i].length;
+			filled += arrays[i].length + ARRAY_OVERHEAD;
+			if (filled >= GROUP_ELEMENTS) {
+				groupEnds[groups++] = i + 1;
+				filled = 0;
+			}
+		}
+		if (filled > 0) {
+			groupEnds[groups++] = arrays.length;
+		}
+
+		if (groups > 0) {
+			pool.invoke(new groupTask(arrays, groupEnds, 0, groups));
+		}
+
+		long nanos = System.nanoTime() - start;
+		arraysSorted.add(arrays.length);
+		keysSorted.add(keys);
+		nanosSpent.add(nanos);
+		return new batchStats(arrays.length, keys, nanos);
+	}
+
+	/**
+	 * @return totals over every sortAll call so far. Time is summed per call, so with
+	 * concurrent callers arrays/sec is per caller rather than for the whole service.
+	 */
+	public batchStats totals() {
+		return new batchStats(arraysSorted.sum(), keysSorted.sum(), nanosSpent.sum());
+	}
+
+	/**
+	 * Sorts groups [from, to) by halving the range until one group is left.
+	 */
+	static class groupTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[][] arrays;
+		private final int[] groupEnds;
+		private final int from;
+		private final int to;
+
+		groupTask(int[][] arrays, int[] groupEnds, int from, int to) {
+			this.arrays = arrays;
+			this.groupEnds = groupEnds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new groupTask(arrays, groupEnds, from, mid), new groupTask(arrays, groupEnds, mid, to));
+				return;
+			}
+			int first = from == 0 ? 0 : groupEnds[from - 1];
+			for (int i = first; i < groupEnds[from]; i++) {
+				sort(arrays[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sorts one array with the network or introsort, by size.
+	 * @param inputArray array to sort
+	 */
+	public static void sort(int inputArray[]) {
+		if (inputArray.length <= NETWORK_MAX) {
+			networkSort(inputArray, 0, inputArray.length);
+		} else {
+			quicksort.introSort(inputArray, 0, inputArray.length - 1);
+		}
+	}
+
+	/**
+	 * Runs the sorting network for n keys over inputArray[offset, offset + n).
+	 * @param inputArray array containing the keys
+	 * @param offset first index
+	 * @param n number of keys, at most NETWORK_MAX
+	 */
+	static void networkSort(int inputArray[], int offset, int n) {
+		int[] network = NETWORKS[n];
+		for (int c = 0; c < network.length; c += 2) {
+			int i = offset + network[c];
+			int j = offset + network[c + 1];
+			int x = inputArray[i];
+			int y = inputArray[j];
+			inputArray[i] = Math.min(x, y);
+			inputArray[j] = Math.max(x, y);
+		}
+		quicksort.probe.compare(network.length / 2);
+	}
+
+	/**
+	 * main method sorts a batch of randomly sized arrays with the batch sorter and with a
+	 * plain loop over introSort, and reports both throughputs.
+	 * @param args "<arrays> <maxLength>"; lengths are skewed towards small arrays
+	 */
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int maxLength = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		Random rd = new Random(sortBenchmark.SEED);
+		int[][] input = new int[count][];
+		for (int i = 0; i < count; i++) {
+			//Squaring a uniform fraction gives mostly short arrays and a long tail.
+			double u = rd.nextDouble();
+			input[i] = new int[(int) (u * u * maxLength)];
+			for (int j = 0; j < input[i].length; j++) {
+				input[i][j] = rd.nextInt();
+			}
+		}
+
+		batchSorter sorter = new batchSorter();
+		for (int round = 0; round < 3; round++) {
+			int[][] batch = new int[count][];
+			int[][] plain = new int[count][];
+			for (int i = 0; i < count; i++) {
+				batch[i] = input[i].clone();
+				plain[i] = input[i].clone();
+			}
+
+			batchStats stats = sorter.sortAll(batch);
+			long start = System.nanoTime();
+			for (int[] a : plain) {
+				quicksort.introSort(a, 0, a.length - 1);
+			}
+			batchStats loop = new batchStats(count, stats.keys, System.nanoTime() - start);
+
+			for (int i = 0; i < count; i++) {
+				if (!Arrays.equals(batch[i], plain[i])) {
+					System.out.println("Array " + i + " sorted differently.");
+					return;
+				}
+			}
+			System.out.println("Batch sorter: " + stats);
+			System.out.println("Plain loop:   " + loop);
+		}
+		System.out.println("Totals: " + sorter.totals());
+	}
+}
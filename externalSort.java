@@ -0,0 +1,367 @@
+package quicksort;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author cyrus
+ * Class externalSort sorts binary files of ints that are larger than memory.
+ * <p>
+ * Input and output files are raw sequences of 32-bit big-endian ints (the format written
+ * by DataOutputStream.writeInt). The sort runs in two phases:
+ * 	1. Run formation: the input is read in chunks of chunkInts ints, each chunk is sorted
+ * 	   in memory with a quicksort engine and written to a temporary run file.
+ * 	2. Merge: runs are merged MAX_FAN_IN at a time with a primitive binary min-heap,
+ * 	   repeating until a single run remains. Every run is read and written through large
+ * 	   direct buffers, so the disks see long sequential transfers.
+ * Memory use, for sizing chunkInts:
+ * 	- run formation: about 8 * chunkInts bytes of heap, the chunk itself plus a scratch
+ * 	  array of the same size for the radix or merge pass of the engine, and one
+ * 	  MERGE_BUFFER_BYTES direct buffer for the file I/O;
+ * 	- merge: one MERGE_BUFFER_BYTES direct buffer per input run plus one for the output,
+ * 	  so (fan-in + 1) * MERGE_BUFFER_BYTES, at most about 1 GB at MAX_FAN_IN.
+ */
+public class externalSort {
+
+	/**
+	 * Default chunk size: 64M ints (256 MB) sorted in memory per run.
+	 */
+	static final int DEFAULT_CHUNK_INTS = 1 << 26;
+
+	/**
+	 * Maximum number of runs merged in one pass.
+	 */
+	static final int MAX_FAN_IN = 256;
+
+	/**
+	 * Read buffer per input run and write buffer for the output, in bytes.
+	 */
+	static final int MERGE_BUFFER_BYTES = 1 << 22;
+
+	/**
+	 * Sorts inFile into outFile with the default chunk size and the adaptive engine.
+	 * @param inFile binary int file to be sorted
+	 * @param outFile path of the sorted output
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void sort(String inFile, String outFile) throws IOException {
+		sort(inFile, outFile, DEFAULT_CHUNK_INTS, quicksort::adaptiveSort);
+	}
+
+	/**
+	 * Sorts inFile into outFile.
+	 * @param inFile binary int file to be sorted
+	 * @param outFile path of the sorted output
+	 * @param chunkInts number of ints sorted in memory per run
+	 * @param engine in-memory sort engine used for each run
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void sort(String inFile, String outFile, int chunkInts, quicksort.sortEngine engine) throws IOException {
+		Path out = Paths.get(outFile).toAbsolutePath();
+		Path tmpDir = Files.createTempDirectory(out.getParent(), "runs");
+		try {
+			List<Path> runs = formRuns(Paths.get(inFile), tmpDir, chunkInts, engine);
+
+			//Merge in passes of at most MAX_FAN_IN runs until one remains.
+			int pass = 0;
+			while (runs.size() > 1) {
+				List<Path> merged = new ArrayList<Path>();
+				for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+					List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+					Path target = tmpDir.resolve("merge-" + pass + "-" + merged.size());
+					merge(group, target);
+					for (Path p : group) {
+						Files.delete(p);
+					}
+					merged.add(target);
+				}
+				runs = merged;
+				pass++;
+			}
+
+			if (runs.isEmpty()) {
+				Files.write(out, new byte[0]);
+			} else {
+				Files.move(runs.get(0), out, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			File[] leftovers = tmpDir.toFile().listFiles();
+			if (leftovers != null) {
+				for (File f : leftovers) {
+					f.delete();
+				}
+			}
+			Files.deleteIfExists(tmpDir);
+		}
+	}
+
+	/**
+	 * Phase 1: reads the input chunk by chunk, sorts each chunk and writes it as a run.
+	 * @return the run files, in order
+	 */
+	static List<Path> formRuns(Path in, Path tmpDir, int chunkInts, quicksort.sortEngine engine) throws IOException {
+		List<Path> runs = new ArrayList<Path>();
+		int[] chunk = new int[chunkInts];
+		ByteBuffer buffer = ByteBuffer.allocateDirect(MERGE_BUFFER_BYTES);
+
+		try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ)) {
+			if (input.size() % 4 != 0) {
+				throw new IOException("Input length is not a multiple of 4 bytes: " + in);
+			}
+			while (true) {
+				//Fill the chunk.
+				int n = 0;
+				while (n < chunkInts) {
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), 4L * (chunkInts - n)));
+					if (input.read(buffer) < 0) {
+						break;
+					}
+					//Keep any partial int at the front of the buffer for the next read.
+					buffer.flip();
+					int whole = buffer.remaining() / 4;
+					buffer.asIntBuffer().get(chunk, n, whole);
+					n += whole;
+					int partial = buffer.remaining() - whole * 4;
+					if (partial > 0) {
+						input.position(input.position() - partial);
+					}
+				}
+				if (n == 0) {
+					break;
+				}
+
+				//Sort it in memory and write it out as a run.
+				engine.sort(chunk, 0, n - 1);
+				Path run = tmpDir.resolve("run-" + runs.size());
+				try (FileChannel output = FileChannel.open(run, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					int written = 0;
+					while (written < n) {
+						buffer.clear();
+						int count = Math.min(n - written, buffer.capacity() / 4);
+						buffer.asIntBuffer().put(chunk, written, count);
+						buffer.limit(count * 4);
+						while (buffer.hasRemaining()) {
+							output.write(buffer);
+						}
+						written += count;
+					}
+				}
+				runs.add(run);
+
+				if (n < chunkInts) {
+					break;
+				}
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Buffered sequential reader over one run file.
+	 */
+	static class runReader implements AutoCloseable {
+		private final FileChannel channel;
+		private final ByteBuffer bytes = ByteBuffer.allocateDirect(MERGE_BUFFER_BYTES);
+		private IntBuffer ints = IntBuffer.allocate(0);
+
+		runReader(Path run) throws IOException {
+			channel = FileChannel.open(run, StandardOpenOption.READ);
+		}
+
+		/**
+		 * @return true if another int is available, refilling the buffer if needed.
+		 */
+		boolean hasNext() throws IOException {
+			if (ints.hasRemaining()) {
+				return true;
+			}
+			bytes.clear();
+			while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+				//keep filling
+			}
+			bytes.flip();
+			ints = bytes.asIntBuffer();
+			return ints.hasRemaining();
+		}
+
+		int next() {
+			return ints.get();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Phase 2: k-way merge of sorted runs into target using a binary min-heap kept in
+	 * two parallel int arrays (key, run) so no objects are created per element.
+	 */
+	static void merge(List<Path> runs, Path target) throws IOException {
+		int k = runs.size();
+		runReader[] readers = new runReader[k];
+		int[] heapKey = new int[k];
+		int[] heapRun = new int[k];
+		int size = 0;
+
+		try (FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			//Seed the heap with the first key of every run.
+			for (int r = 0; r < k; r++) {
+				readers[r] = new runReader(runs.get(r));
+				if (readers[r].hasNext()) {
+					heapKey[size] = readers[r].next();
+					heapRun[size] = r;
+					siftUp(heapKey, heapRun, size++);
+				}
+			}
+
+			ByteBuffer outBytes = ByteBuffer.allocateDirect(MERGE_BUFFER_BYTES);
+			IntBuffer outInts = outBytes.asIntBuffer();
+			while (size > 0) {
+				//Emit the smallest key...
+				if (!outInts.hasRemaining()) {
+					flush(output, outBytes, outInts.position());
+					outInts.clear();
+				}
+				outInts.put(heapKey[0]);
+
+				//...and replace it with the next key from the same run, or shrink the heap.
+				runReader reader = readers[heapRun[0]];
+				if (reader.hasNext()) {
+					heapKey[0] = reader.next();
+				} else {
+					size--;
+					heapKey[0] = heapKey[size];
+					heapRun[0] = heapRun[size];
+				}
+				siftDown(heapKey, heapRun, 0, size);
+			}
+			flush(output, outBytes, outInts.position());
+		} finally {
+			for (runReader reader : readers) {
+				if (reader != null) {
+					reader.close();
+				}
+			}
+		}
+	}
+
+	private static void flush(FileChannel output, ByteBuffer outBytes, int ints) throws IOException {
+		outBytes.clear();
+		outBytes.limit(ints * 4);
+		while (outBytes.hasRemaining()) {
+			output.write(outBytes);
+		}
+	}
+
+	private static void siftUp(int heapKey[], int heapRun[], int i) {
+		int key = heapKey[i];
+		int run = heapRun[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heapKey[parent] <= key) {
+				break;
+			}
+			heapKey[i] = heapKey[parent];
+			heapRun[i] = heapRun[parent];
+			i = parent;
+		}
+		heapKey[i] = key;
+		heapRun[i] = run;
+	}
+
+	private static void siftDown(int heapKey[], int heapRun[], int i, int size) {
+		int key = heapKey[i];
+		int run = heapRun[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heapKey[child + 1] < heapKey[child]) {
+				child++;
+			}
+			if (heapKey[child] >= key) {
+				break;
+			}
+			heapKey[i] = heapKey[child];
+			heapRun[i] = heapRun[child];
+			i = child;
+		}
+		heapKey[i] = key;
+		heapRun[i] = run;
+	}
+
+	/**
+	 * Helper function to write a file of random ints for testing.
+	 * @param outFile path of the file to write
+	 * @param count number of ints
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void generateRandomFile(String outFile, long count) throws IOException {
+		Random rd = new Random();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(MERGE_BUFFER_BYTES);
+		try (FileChannel output = FileChannel.open(Paths.get(outFile), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (long i = 0; i < count; i++) {
+				if (!buffer.hasRemaining()) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						output.write(buffer);
+					}
+					buffer.clear();
+				}
+				buffer.putInt(rd.nextInt());
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				output.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * main method generates or sorts binary int files.
+	 * @param args	"generate <file> <count>" - write count random ints
+	 * 				"sort <inFile> <outFile> [chunkInts]" - external sort
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.out.println("Usage: generate <file> <count> | sort <inFile> <outFile> [chunkInts]");
+			System.exit(0);
+		}
+		try {
+			long start = System.nanoTime();
+			switch (args[0]) {
+				case "generate":
+					generateRandomFile(args[1], Long.parseLong(args[2]));
+					break;
+				case "sort":
+					int chunkInts = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CHUNK_INTS;
+					sort(args[1], args[2], chunkInts, quicksort::adaptiveSort);
+					break;
+				default:
+					System.out.println("First argument must be one of: generate, sort.");
+					return;
+			}
+			System.out.println(args[0] + " took " + (System.nanoTime() - start) / 1000000 + " ms.");
+		} catch (IOException x) {
+			System.err.format("IOException: %s%n", x);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package assignmentOne;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import assignmentOne.assignmentOne.Point;
+
+/**
+ * @author cyrus
+ * Class lshIndex implements an approximate nearest neighbour index over 2D Points using
+ * locality-sensitive hashing for Euclidean distance (random projection buckets).
+ * <p>
+ * Each of the L tables hashes a point with k random projections
+ * h(p) = floor((a . p + b) / w), where a is a Gaussian vector and b is uniform in [0, w).
+ * Points that land in the same k-tuple of buckets share a table bucket. A query scans only
+ * the buckets it hashes to, one per table, and returns the closest candidate it sees.
+ * More tables raise recall; more projections per table or a smaller w make buckets
+ * smaller and queries faster.
+ * <p>
+ * Buckets are stored in compressed form per table: a primitive open-addressing map from
+ * bucket key to bucket number, and the member indices of all buckets laid out back to back.
+ */
+class lshIndex {
+
+	//Packed coordinates of the indexed points.
+	private final int[] xs;
+	private final int[] ys;
+
+	//Hash parameters.
+	private final int numTables;
+	private final int hashesPerTable;
+	private final double bucketWidth;
+	private final double[][] projX;		//projX[t][k], projY[t][k]: projection vectors
+	private final double[][] projY;
+	private final double[][] offsets;	//offsets[t][k]: uniform in [0, w)
+
+	//Per-table bucket storage.
+	private final long[][] slotKeys;	//open-addressing map key -> bucket number
+	private final int[][] slotBuckets;
+	private final int[] slotMask;
+	private final int[][] bucketStart;	//bucketStart[t][b] .. bucketStart[t][b + 1] in members[t]
+	private final int[][] members;
+
+	/**
+	 * Summary of a batch of queries.
+	 */
+	static class lshStats {
+		int queries;
+		double recall;			//fraction of queries whose answer is an exact nearest neighbour
+		double avgCandidates;	//points scanned per query
+		double nanosPerQuery;	//wall clock time per query over the batch
+		int misses;				//queries whose buckets were all empty
+
+		@Override
+		public String toString() {
+			return String.format("queries=%d recall=%.4f candidates/query=%.1f ns/query=%.1f empty=%d",
+					queries, recall, avgCandidates, nanosPerQuery, misses);
+		}
+	}
+
+	/**
+	 * Builds an index over a list of Points.
+	 * @param points the Points to be indexed
+	 * @param numTables number of hash tables (L)
+	 * @param hashesPerTable number of projections per table (k)
+	 * @param bucketWidth bucket width w, in coordinate units
+	 * @param seed random seed for the projections
+	 */
+	lshIndex(List<Point> points, int numTables, int hashesPerTable, double bucketWidth, long seed) {
+		this(packX(points), packY(points), numTables, hashesPerTable, bucketWidth, seed);
+	}
+
+	/**
+	 * Builds an index over packed coordinates.
+	 * @param xs x-coordinates
+	 * @param ys y-coordinates
+	 * @param numTables number of hash tables (L)
+	 * @param hashesPerTable number of projections per table (k)
+	 * @param bucketWidth bucket width w, in coordinate units
+	 * @param seed random seed for the projections
+	 */
+	lshIndex(int[] xs, int[] ys, int numTables, int hashesPerTable, double bucketWidth, long seed) {
+		if (numTables < 1 || hashesPerTable < 1 || !(bucketWidth > 0)) {
+			throw new IllegalArgumentException("numTables and hashesPerTable must be positive, bucketWidth > 0");
+		}
+		this.xs = xs;
+		this.ys = ys;
+		this.numTables = numTables;
+		this.hashesPerTable = hashesPerTable;
+		this.bucketWidth = bucketWidth;
+
+		Random rand = new Random(seed);
+		projX = new double[numTables][hashesPerTable];
+		projY = new double[numTables][hashesPerTable];
+		offsets = new double[numTables][hashesPerTable];
+		for (int t = 0; t < numTables; t++) {
+			for (int k = 0; k < hashesPerTable; k++) {
+				projX[t][k] = rand.nextGaussian();
+				projY[t][k] = rand.nextGaussian();
+				offsets[t][k] = rand.nextDouble() * bucketWidth;
+			}
+		}
+
+		slotKeys = new long[numTables][];
+		slotBuckets = new int[numTables][];
+		slotMask = new int[numTables];
+		bucketStart = new int[numTables][];
+		members = new int[numTables][];
+
+		//Tables are independent, build them in parallel.
+		IntStream.range(0, numTables).parallel().forEach(this::buildTable);
+	}
+
+	private static int[] packX(List<Point> points) {
+		int[] out = new int[points.size()];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = points.get(i).x;
+		}
+		return out;
+	}
+
+	private static int[] packY(List<Point> points) {
+		int[] out = new int[points.size()];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = points.get(i).y;
+		}
+		return out;
+	}
+
+	/**
+	 * Hashes every point into table t and lays the buckets out back to back.
+	 */
+	private void buildTable(int t) {
+		int n = xs.length;
+		int capacity = 16;
+		while (capacity < n * 2) {
+			capacity <<= 1;
+		}
+		long[] keys = new long[capacity];
+		int[] buckets = new int[capacity];
+		Arrays.fill(buckets, -1);
+		int mask = capacity - 1;
+
+		//First pass: assign bucket numbers and count members.
+		int[] bucketOf = new int[n];
+		int[] counts = new int[Math.max(1, n)];
+		int numBuckets = 0;
+		for (int i = 0; i < n; i++) {
+			long key = bucketKey(t, xs[i], ys[i]);
+			int s = mix(key) & mask;
+			while (buckets[s] >= 0 && keys[s] != key) {
+				s = (s + 1) & mask;
+			}
+			if (buckets[s] < 0) {
+				keys[s] = key;
+				buckets[s] = numBuckets++;
+			}
+			bucketOf[i] = buckets[s];
+			counts[buckets[s]]++;
+		}
+
+		//Prefix sums give each bucket its start offset.
+		int[] start = new int[numBuckets + 1];
+		for (int b = 0; b < numBuckets; b++) {
+			start[b + 1] = start[b] + counts[b];
+		}
+
+		//Second pass: scatter point indices into their buckets.
+		int[] fill = Arrays.copyOf(start, numBuckets);
+		int[] mem = new int[n];
+		for (int i = 0; i < n; i++) {
+			mem[fill[bucketOf[i]]++] = i;
+		}
+
+		slotKeys[t] = keys;
+		slotBuckets[t] = buckets;
+		slotMask[t] = mask;
+		bucketStart[t] = start;
+		members[t] = mem;
+	}
+
+	/**
+	 * Combines the k projection buckets of a point in table t into one 64-bit key.
+	 */
+	private long bucketKey(int t, int x, int y) {
+		long key = 0x632BE59BD9B4E019L;
+		double[] ax = projX[t];
+		double[] ay = projY[t];
+		double[] b = offsets[t];
+		for (int k = 0; k < hashesPerTable; k++) {
+			long h = (long) Math.floor((ax[k] * x + ay[k] * y + b[k]) / bucketWidth);
+			key = (key ^ h) * 0x9E3779B97F4A7C15L;
+			key ^= key >>> 29;
+		}
+		return key;
+	}
+
+	private static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * Finds an approximate nearest neighbour of (qx, qy).
+	 * @param qx query x-coordinate
+	 * @param qy query y-coordinate
+	 * @return index of the closest candidate, or -1 if every bucket probed was empty
+	 */
+	public int nearest(int qx, int qy) {
+		return nearest(qx, qy, null);
+	}
+
+	/**
+	 * As nearest(qx, qy), optionally counting candidates into scanned[0].
+	 */
+	private int nearest(int qx, int qy, long[] scanned) {
+		long bestDist = Long.MAX_VALUE;
+		int best = -1;
+		for (int t = 0; t < numTables; t++) {
+			long key = bucketKey(t, qx, qy);
+			long[] keys = slotKeys[t];
+			int[] buckets = slotBuckets[t];
+			int mask = slotMask[t];
+			int s = mix(key) & mask;
+			while (buckets[s] >= 0 && keys[s] != key) {
+				s = (s + 1) & mask;
+			}
+			int b = buckets[s];
+			if (b < 0) {
+				continue;
+			}
+
+			int[] mem = members[t];
+			int end = bucketStart[t][b + 1];
+			for (int j = bucketStart[t][b]; j < end; j++) {
+				int i = mem[j];
+				long dx = (long) xs[i] - qx;
+				long dy = (long) ys[i] - qy;
+				long d = dx * dx + dy * dy;
+				if (d < bestDist) {
+					bestDist = d;
+					best = i;
+				}
+			}
+			if (scanned != null) {
+				scanned[0] += end - bucketStart[t][b];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds an approximate nearest neighbour of p.
+	 * @param p query Point
+	 * @return the closest candidate Point, or null if none was found
+	 */
+	public Point nearest(Point p) {
+		int i = nearest(p.x, p.y);
+		return i < 0 ? null : new Point(xs[i], ys[i]);
+	}
+
+	/**
+	 * Answers a batch of queries in parallel.
+	 * @param qxs query x-coordinates
+	 * @param qys query y-coordinates
+	 * @return result[i] = index of the approximate nearest neighbour of query i, or -1
+	 */
+	public int[] nearestBatch(int[] qxs, int[] qys) {
+		int[] result = new int[qxs.length];
+		IntStream.range(0, qxs.length).parallel().forEach(i -> result[i] = nearest(qxs[i], qys[i]));
+		return result;
+	}
+
+	/**
+	 * Runs a batch of queries and measures latency, candidates scanned and recall.
+	 * Recall is checked against an exact linear scan on up to maxExactChecks queries.
+	 * @param qxs query x-coordinates
+	 * @param qys query y-coordinates
+	 * @param maxExactChecks number of queries to verify exactly
+	 * @return the batch statistics
+	 */
+	public lshStats evaluate(int[] qxs, int[] qys, int maxExactChecks) {
+		lshStats stats = new lshStats();
+		stats.queries = qxs.length;
+
+		//Latency: time the parallel batch path as callers would use it.
+		long start = System.nanoTime();
+		int[] result = nearestBatch(qxs, qys);
+		stats.nanosPerQuery = (double) (System.nanoTime() - start) / Math.max(1, qxs.length);
+
+		//Candidates scanned, counted on a sequential pass.
+		long[] scanned = new long[1];
+		for (int i = 0; i < qxs.length; i++) {
+			nearest(qxs[i], qys[i], scanned);
+			if (result[i] < 0) {
+				stats.misses++;
+			}
+		}
+		stats.avgCandidates = (double) scanned[0] / Math.max(1, qxs.length);
+
+		//Recall against a brute force scan.
+		int checks = Math.min(maxExactChecks, qxs.length);
+		int hits = IntStream.range(0, checks).parallel().map(q -> {
+			long exact = Long.MAX_VALUE;
+			for (int i = 0; i < xs.length; i++) {
+				long dx = (long) xs[i] - qxs[q];
+				long dy = (long) ys[i] - qys[q];
+				exact = Math.min(exact, dx * dx + dy * dy);
+			}
+			if (result[q] < 0) {
+				return 0;
+			}
+			long dx = (long) xs[result[q]] - qxs[q];
+			long dy = (long) ys[result[q]] - qys[q];
+			return (dx * dx + dy * dy == exact) ? 1 : 0;
+		}).sum();
+		stats.recall = checks == 0 ? 0 : (double) hits / checks;
+		return stats;
+	}
+
+	/**
+	 * @return the number of indexed points.
+	 */
+	public int size() {
+		return xs.length;
+	}
+
+	/**
+	 * Main function builds an index over random points and reports recall and latency.
+	 * @param args 	1. numPoints - number of random points to index
+	 * 				2. numQueries - number of random queries
+	 * 				3. tables <optional> - number of hash tables, defaults to 8
+	 * 				4. hashes <optional> - projections per table, defaults to 2
+	 * 				5. width <optional> - bucket width, defaults to 4.0
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: <numPoints> <numQueries> [tables] [hashes] [width]");
+			System.exit(0);
+		}
+		double numPoints = Double.parseDouble(args[0]);
+		int numQueries = Integer.parseInt(args[1]);
+		int tables = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int hashes = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+		double width = args.length > 4 ? Double.parseDouble(args[4]) : 4.0;
+
+		List<Point> pointArray = assignmentOne.generateRandomPoints(numPoints);
+		long start = System.nanoTime();
+		lshIndex index = new lshIndex(pointArray, tables, hashes, width, 42);
+		System.out.println("Built " + tables + " tables over " + index.size() + " points in "
+				+ (System.nanoTime() - start) / 1000000 + " ms.");
+
+		Random rand = new Random();
+		int[] qxs = new int[numQueries];
+		int[] qys = new int[numQueries];
+		for (int i = 0; i < numQueries; i++) {
+			qxs[i] = rand.nextInt(1000);
+			qys[i] = rand.nextInt(1000);
+		}
+		System.out.println(index.evaluate(qxs, qys, 1000));
+	}
+}
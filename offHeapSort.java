@@ -0,0 +1,532 @@
+package quicksort;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.LongStream;
+
+/**
+ * @author cyrus
+ * Class offHeapSort sorts ints or longs held in a MemorySegment, with long indices, so
+ * a column is not limited to the 2^31 - 1 elements of a Java array.
+ * <p>
+ * The engines are introsort (median-of-three Hoare partition, insertion sort below
+ * INSERTION_CUTOFF, heapsort after 2*lg(n) levels) and a fork/join parallel version of
+ * it. The segment can come from Arena.allocate or from mapFile, which maps a file
+ * read-write so a multi-billion-key column is sorted in place in the page cache
+ * without ever being copied onto the heap.
+ * <p>
+ * Keys are accessed through constant native-order layouts, which the JIT compiles to
+ * plain loads and stores; passing the layout as a parameter made the sort about three
+ * times slower. Big-endian files, as written by externalSort and sortInputs, are byte
+ * swapped to native order in one parallel pass before sorting and back after it.
+ * The parallel engine needs a segment from a shared or global arena.
+ * <p>
+ * java.lang.foreign is a preview API in JDK 21, so this class needs JDK 21 and is not
+ * part of a plain JDK 17 build of the package. Compile it on its own with the others
+ * on the classpath, and run with the same flag:
+ * 	javac --release 21 --enable-preview -cp out -d out offHeapSort.java
+ * 	java --enable-preview -cp out quicksort.offHeapSort
+ */
+public class offHeapSort {
+
+	/**
+	 * Ranges of this size or smaller are finished with insertion sort.
+	 */
+	static final int INSERTION_CUTOFF = 16;
+
+	/**
+	 * Ranges larger than this are split across the fork/join pool.
+	 */
+	static final long PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Native-order key layouts. Unaligned, so any slice of a segment can be sorted.
+	 */
+	static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+	static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
+	/**
+	 * Sorts a whole segment of native-order ints.
+	 * @param segment segment holding the keys
+	 */
+	public static void sortInts(MemorySegment segment) {
+		sortInts(segment, 0, segment.byteSize() / 4 - 1);
+	}
+
+	/**
+	 * Introsort of the ints at indices [low, high].
+	 * @param segment segment holding the keys
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void sortInts(MemorySegment segment, long low, long high) {
+		if (low >= high)
+			return;
+
+		introSortInts(segment, low, high, 2 * floorLog2(high - low + 1));
+	}
+
+	/**
+	 * Fork/join introsort of the ints at indices [low, high].
+	 * @param segment segment holding the keys, from a shared or global arena
+	 * @param low lower index
+	 * @param high upper index
+	 * @param pool the pool to run on
+	 */
+	public static void parallelSortInts(MemorySegment segment, long low, long high, ForkJoinPool pool) {
+		if (low >= high)
+			return;
+
+		pool.invoke(new intSortTask(segment, low, high, 2 * floorLog2(high - low + 1)));
+	}
+
+	static void introSortInts(MemorySegment segment, long low, long high, int depthLeft) {
+		while (high - low + 1 > INSERTION_CUTOFF) {
+			if (depthLeft-- == 0) {
+				heapSortInts(segment, low, high);
+				return;
+			}
+			long split = partitionInts(segment, low, high);
+			if (split - low < high - split) {
+				introSortInts(segment, low, split, depthLeft);
+				low = split + 1;
+			} else {
+				introSortInts(segment, split + 1, high, depthLeft);
+				high = split;
+			}
+		}
+		insertionSortInts(segment, low, high);
+	}
+
+	/**
+	 * Hoare partition around the median of the first, middle and last keys. Hoare
+	 * rather than the stock Lomuto loop because it swaps less and splits runs of equal
+	 * keys evenly, which matters for billions of keys drawn from a small domain.
+	 * @return split such that keys in [low, split] are <= keys in [split + 1, high]
+	 */
+	static long partitionInts(MemorySegment segment, long low, long high) {
+		//Order the three samples in place so both scans are guarded.
+		long mid = (low + high) >>> 1;
+		if (segment.getAtIndex(INT, mid) < segment.getAtIndex(INT, low)) {
+			swapInts(segment, mid, low);
+		}
+		if (segment.getAtIndex(INT, high) < segment.getAtIndex(INT, low)) {
+			swapInts(segment, high, low);
+		}
+		if (segment.getAtIndex(INT, high) < segment.getAtIndex(INT, mid)) {
+			swapInts(segment, high, mid);
+		}
+		int pivot = segment.getAtIndex(INT, mid);
+
+		long i = low - 1;
+		long j = high + 1;
+		while (true) {
+			do {
+				i++;
+			} while (segment.getAtIndex(INT, i) < pivot);
+			do {
+				j--;
+			} while (segment.getAtIndex(INT, j) > pivot);
+			if (i >= j) {
+				return j;
+			}
+			swapInts(segment, i, j);
+		}
+	}
+
+	static void insertionSortInts(MemorySegment segment, long low, long high) {
+		for (long i = low + 1; i <= high; i++) {
+			int key = segment.getAtIndex(INT, i);
+			long j = i - 1;
+			while (j >= low && segment.getAtIndex(INT, j) > key) {
+				segment.setAtIndex(INT, j + 1, segment.getAtIndex(INT, j));
+				j--;
+			}
+			segment.setAtIndex(INT, j + 1, key);
+		}
+	}
+
+	static void heapSortInts(MemorySegment segment, long low, long high) {
+		long n = high - low + 1;
+		for (long i = n / 2 - 1; i >= 0; i--) {
+			siftDownInts(segment, low, i, n);
+		}
+		for (long end = n - 1; end > 0; end--) {
+			swapInts(segment, low, low + end);
+			siftDownInts(segment, low, 0, end);
+		}
+	}
+
+	private static void siftDownInts(MemorySegment segment, long offset, long i, long n) {
+		int value = segment.getAtIndex(INT, offset + i);
+		while (true) {
+			long child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && segment.getAtIndex(INT, offset + child + 1) > segment.getAtIndex(INT, offset + child)) {
+				child++;
+			}
+			if (segment.getAtIndex(INT, offset + child) <= value) {
+				break;
+			}
+			segment.setAtIndex(INT, offset + i, segment.getAtIndex(INT, offset + child));
+			i = child;
+		}
+		segment.setAtIndex(INT, offset + i, value);
+	}
+
+	private static void swapInts(MemorySegment segment, long i, long j) {
+		int tmp = segment.getAtIndex(INT, i);
+		segment.setAtIndex(INT, i, segment.getAtIndex(INT, j));
+		segment.setAtIndex(INT, j, tmp);
+	}
+
+	/**
+	 * Fork/join task for parallelSortInts, shaped like quicksort.parallelSortTask.
+	 */
+	static class intSortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		//Tasks are never serialized; MemorySegment is not Serializable.
+		private final transient MemorySegment segment;
+		private long low;
+		private long high;
+		private int depthLeft;
+
+		intSortTask(MemorySegment segment, long low, long high, int depthLeft) {
+			this.segment = segment;
+			this.low = low;
+			this.high = high;
+			this.depthLeft = depthLeft;
+		}
+
+		@Override
+		protected void compute() {
+			List<intSortTask> forked = new ArrayList<intSortTask>();
+			while (high - low + 1 > PARALLEL_THRESHOLD && depthLeft > 0) {
+				long split = partitionInts(segment, low, high);
+				depthLeft--;
+
+				//Fork the larger side, keep partitioning the smaller side here.
+				intSortTask task;
+				if (split - low > high - split) {
+					task = new intSortTask(segment, low, split, depthLeft);
+					low = split + 1;
+				} else {
+					task = new intSortTask(segment, split + 1, high, depthLeft);
+					high = split;
+				}
+				task.fork();
+				forked.add(task);
+			}
+			introSortInts(segment, low, high, depthLeft);
+			for (intSortTask task : forked) {
+				task.join();
+			}
+		}
+	}
+
+	/**
+	 * Sorts a whole segment of native-order longs.
+	 * @param segment segment holding the keys
+	 */
+	public static void sortLongs(MemorySegment segment) {
+		sortLongs(segment, 0, segment.byteSize() / 8 - 1);
+	}
+
+	/**
+	 * Introsort of the longs at indices [low, high].
+	 * @param segment segment holding the keys
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void sortLongs(MemorySegment segment, long low, long high) {
+		if (low >= high)
+			return;
+
+		introSortLongs(segment, low, high, 2 * floorLog2(high - low + 1));
+	}
+
+	/**
+	 * Fork/join introsort of the longs at indices [low, high].
+	 * @param segment segment holding the keys, from a shared or global arena
+	 * @param low lower index
+	 * @param high upper index
+	 * @param pool the pool to run on
+	 */
+	public static void parallelSortLongs(MemorySegment segment, long low, long high, ForkJoinPool pool) {
+		if (low >= high)
+			return;
+
+		pool.invoke(new longSortTask(segment, low, high, 2 * floorLog2(high - low + 1)));
+	}
+
+	static void introSortLongs(MemorySegment segment, long low, long high, int depthLeft) {
+		while (high - low + 1 > INSERTION_CUTOFF) {
+			if (depthLeft-- == 0) {
+				heapSortLongs(segment, low, high);
+				return;
+			}
+			long split = partitionLongs(segment, low, high);
+			if (split - low < high - split) {
+				introSortLongs(segment, low, split, depthLeft);
+				low = split + 1;
+			} else {
+				introSortLongs(segment, split + 1, high, depthLeft);
+				high = split;
+			}
+		}
+		insertionSortLongs(segment, low, high);
+	}
+
+	static long partitionLongs(MemorySegment segment, long low, long high) {
+		long mid = (low + high) >>> 1;
+		if (segment.getAtIndex(LONG, mid) < segment.getAtIndex(LONG, low)) {
+			swapLongs(segment, mid, low);
+		}
+		if (segment.getAtIndex(LONG, high) < segment.getAtIndex(LONG, low)) {
+			swapLongs(segment, high, low);
+		}
+		if (segment.getAtIndex(LONG, high) < segment.getAtIndex(LONG, mid)) {
+			swapLongs(segment, high, mid);
+		}
+		long pivot = segment.getAtIndex(LONG, mid);
+
+		long i = low - 1;
+		long j = high + 1;
+		while (true) {
+			do {
+				i++;
+			} while (segment.getAtIndex(LONG, i) < pivot);
+			do {
+				j--;
+			} while (segment.getAtIndex(LONG, j) > pivot);
+			if (i >= j) {
+				return j;
+			}
+			swapLongs(segment, i, j);
+		}
+	}
+
+	static void insertionSortLongs(MemorySegment segment, long low, long high) {
+		for (long i = low + 1; i <= high; i++) {
+			long key = segment.getAtIndex(LONG, i);
+			long j = i - 1;
+			while (j >= low && segment.getAtIndex(LONG, j) > key) {
+				segment.setAtIndex(LONG, j + 1, segment.getAtIndex(LONG, j));
+				j--;
+			}
+			segment.setAtIndex(LONG, j + 1, key);
+		}
+	}
+
+	static void heapSortLongs(MemorySegment segment, long low, long high) {
+		long n = high - low + 1;
+		for (long i = n / 2 - 1; i >= 0; i--) {
+			siftDownLongs(segment, low, i, n);
+		}
+		for (long end = n - 1; end > 0; end--) {
+			swapLongs(segment, low, low + end);
+			siftDownLongs(segment, low, 0, end);
+		}
+	}
+
+	private static void siftDownLongs(MemorySegment segment, long offset, long i, long n) {
+		long value = segment.getAtIndex(LONG, offset + i);
+		while (true) {
+			long child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && segment.getAtIndex(LONG, offset + child + 1) > segment.getAtIndex(LONG, offset + child)) {
+				child++;
+			}
+			if (segment.getAtIndex(LONG, offset + child) <= value) {
+				break;
+			}
+			segment.setAtIndex(LONG, offset + i, segment.getAtIndex(LONG, offset + child));
+			i = child;
+		}
+		segment.setAtIndex(LONG, offset + i, value);
+	}
+
+	private static void swapLongs(MemorySegment segment, long i, long j) {
+		long tmp = segment.getAtIndex(LONG, i);
+		segment.setAtIndex(LONG, i, segment.getAtIndex(LONG, j));
+		segment.setAtIndex(LONG, j, tmp);
+	}
+
+	/**
+	 * Fork/join task for parallelSortLongs.
+	 */
+	static class longSortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		//Tasks are never serialized; MemorySegment is not Serializable.
+		private final transient MemorySegment segment;
+		private long low;
+		private long high;
+		private int depthLeft;
+
+		longSortTask(MemorySegment segment, long low, long high, int depthLeft) {
+			this.segment = segment;
+			this.low = low;
+			this.high = high;
+			this.depthLeft = depthLeft;
+		}
+
+		@Override
+		protected void compute() {
+			List<longSortTask> forked = new ArrayList<longSortTask>();
+			while (high - low + 1 > PARALLEL_THRESHOLD && depthLeft > 0) {
+				long split = partitionLongs(segment, low, high);
+				depthLeft--;
+
+				longSortTask task;
+				if (split - low > high - split) {
+					task = new longSortTask(segment, low, split, depthLeft);
+					low = split + 1;
+				} else {
+					task = new longSortTask(segment, split + 1, high, depthLeft);
+					high = split;
+				}
+				task.fork();
+				forked.add(task);
+			}
+			introSortLongs(segment, low, high, depthLeft);
+			for (longSortTask task : forked) {
+				task.join();
+			}
+		}
+	}
+
+	/**
+	 * @return floor(lg(n)) for n >= 1.
+	 */
+	static int floorLog2(long n) {
+		return 63 - Long.numberOfLeadingZeros(n);
+	}
+
+	/**
+	 * Maps a whole file read-write. Writes to the segment go straight to the page cache,
+	 * and the mapping is released when the arena is closed.
+	 * @param file file to map
+	 * @param arena arena that owns the mapping; use a shared arena for the parallel engines
+	 * @return segment covering the file
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public static MemorySegment mapFile(Path file, Arena arena) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size(), arena);
+		}
+	}
+
+	/**
+	 * Reverses the byte order of every int in the segment, converting between big-endian
+	 * file order and native order on little-endian machines. Runs in parallel chunks.
+	 * @param segment segment holding the keys, from a shared or global arena
+	 */
+	public static void reverseIntBytes(MemorySegment segment) {
+		long n = segment.byteSize() / 4;
+		long chunks = (n + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+		LongStream.range(0, chunks).parallel().forEach(c -> {
+			long end = Math.min(n, (c + 1) * PARALLEL_THRESHOLD);
+			for (long i = c * PARALLEL_THRESHOLD; i < end; i++) {
+				segment.setAtIndex(INT, i, Integer.reverseBytes(segment.getAtIndex(INT, i)));
+			}
+		});
+	}
+
+	/**
+	 * Sorts a binary big-endian int file in place through a shared mapping.
+	 * @param file the file to sort
+	 * @throws IOException if the file cannot be mapped or is not a whole number of ints
+	 */
+	public static void sortFile(String file) throws IOException {
+		try (Arena arena = Arena.ofShared()) {
+			MemorySegment segment = mapFile(Paths.get(file), arena);
+			if (segment.byteSize() % 4 != 0) {
+				throw new IOException("File length is not a multiple of 4 bytes: " + file);
+			}
+			boolean swapBytes = ByteOrder.nativeOrder() != ByteOrder.BIG_ENDIAN;
+			if (swapBytes) {
+				reverseIntBytes(segment);
+			}
+			parallelSortInts(segment, 0, segment.byteSize() / 4 - 1, ForkJoinPool.commonPool());
+			if (swapBytes) {
+				reverseIntBytes(segment);
+			}
+			segment.force();
+		}
+	}
+
+	/**
+	 * Helper function to check that a binary big-endian int file is sorted.
+	 * @param file the file to check
+	 * @return index of the first key smaller than its predecessor, or -1 if sorted
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public static long firstUnsorted(String file) throws IOException {
+		try (Arena arena = Arena.ofConfined();
+				FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+			ValueLayout.OfInt fileOrder = INT.withOrder(ByteOrder.BIG_ENDIAN);
+			long n = segment.byteSize() / 4;
+			for (long i = 1; i < n; i++) {
+				if (segment.getAtIndex(fileOrder, i) < segment.getAtIndex(fileOrder, i - 1)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * main method generates, sorts or checks binary int files of any size.
+	 * @param args	"generate <file> <count>" - write count random ints
+	 * 				"sort <file>" - sort the file in place
+	 * 				"check <file>" - verify the file is sorted
+	 */
+	public static void main(String[] args) {
+		//Arguments needed by each operation, including the operation itself.
+		int required = 2;
+		if (args.length > 0 && args[0].equals("generate")) {
+			required = 3;
+		}
+		if (args.length < required) {
+			System.out.println("Usage: generate <file> <count> | sort <file> | check <file>");
+			System.exit(0);
+		}
+		try {
+			long start = System.nanoTime();
+			switch (args[0]) {
+				case "generate":
+					externalSort.generateRandomFile(args[1], Long.parseLong(args[2]));
+					break;
+				case "sort":
+					sortFile(args[1]);
+					break;
+				case "check":
+					long unsorted = firstUnsorted(args[1]);
+					System.out.println(unsorted < 0 ? "File is sorted." : "Key " + unsorted + " is out of order.");
+					break;
+				default:
+					System.out.println("First argument must be one of: generate, sort, check.");
+					return;
+			}
+			System.out.println(args[0] + " took " + (System.nanoTime() - start) / 1000000 + " ms.");
+		} catch (IOException x) {
+			System.err.format("IOException: %s%n", x);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package quicksort;
+
+import java.util.Arrays;
+
+/**
+ * @author cyrus
+ * Class orderStatistics finds order statistics of an int array without fully sorting it.
+ * <p>
+ * All methods rearrange the range in place, using the three-way partition and pivot
+ * strategies from quicksort:
+ * 	- select puts the k-th smallest key at index k, smaller keys before it and larger after;
+ * 	- multiSelect does the same for several ranks at once, sharing the partitioning work;
+ * 	- percentiles answers nearest-rank percentile queries with multiSelect;
+ * 	- partialSort and topK leave the k smallest or largest keys sorted at one end.
+ * Selection is introselect: quickselect with the adaptive pivot, switching to the
+ * median-of-medians pivot when the range stops halving every two steps, so the worst case
+ * stays linear. Selecting m ranks costs O(n log m) instead of the O(n log n) of a sort.
+ */
+public class orderStatistics {
+
+	/**
+	 * Finds the k-th smallest key of [low, high].
+	 * On return inputArray[k] holds it, keys before k are <= it and keys after are >= it.
+	 * @param inputArray array containing the keys
+	 * @param low lower index
+	 * @param high upper index
+	 * @param k absolute index, low <= k <= high
+	 * @return the k-th smallest key
+	 */
+	public static int select(int inputArray[], int low, int high, int k) {
+		if (k < low || k > high) {
+			throw new IllegalArgumentException("k = " + k + " is outside [" + low + ", " + high + "]");
+		}
+		boolean medianOfMedians = false;
+		int checkpoint = high - low + 1;
+		int steps = 0;
+
+		while (high - low + 1 > quicksort.INSERTION_CUTOFF) {
+			int[] bounds = quicksort.partitionThreeWay(inputArray, low, high,
+					medianOfMedians ? MEDIAN_OF_MEDIANS : quicksort.ADAPTIVE_PIVOT);
+			if (k < bounds[0]) {
+				high = bounds[0] - 1;
+			} else if (k > bounds[1]) {
+				low = bounds[1] + 1;
+			} else {
+				//k landed among the keys equal to the pivot
+				return inputArray[k];
+			}
+
+			//Quickselect should at least halve the range every two steps. If it does not,
+			//the pivots are being defeated, so fall back to guaranteed-good ones.
+			if (++steps % 2 == 0) {
+				int size = high - low + 1;
+				if (size > checkpoint / 2) {
+					medianOfMedians = true;
+				}
+				checkpoint = size;
+			}
+		}
+		quicksort.insertionSort(inputArray, low, high);
+		return inputArray[k];
+	}
+
+	/**
+	 * Median of medians of groups of five. Its pivot always has at least 3/10 of the range
+	 * on each side. Unlike the other pivot strategies it rearranges the range: each group
+	 * is sorted and the group medians are gathered at the front.
+	 */
+	static final quicksort.pivotStrategy MEDIAN_OF_MEDIANS = orderStatistics::medianOfMedians;
+
+	/**
+	 * Helper function for MEDIAN_OF_MEDIANS.
+	 * @param inputArray array containing the keys
+	 * @param low lower index
+	 * @param high upper index
+	 * @return index of the median of medians
+	 */
+	static int medianOfMedians(int inputArray[], int low, int high) {
+		if (high - low + 1 <= 5) {
+			quicksort.insertionSort(inputArray, low, high);
+			return (low + high) >>> 1;
+		}
+		int medians = low;
+		for (int group = low; group <= high; group += 5) {
+			int end = Math.min(group + 4, high);
+			quicksort.insertionSort(inputArray, group, end);
+			quicksort.swap(inputArray, medians++, (group + end) >>> 1);
+		}
+		int mid = (low + medians - 1) >>> 1;
+		select(inputArray, low, medians - 1, mid);
+		return mid;
+	}
+
+	/**
+	 * Selects several ranks in one pass. Each rank is selected inside the range left
+	 * by its neighbours, so the work is shared as in a partial quicksort.
+	 * @param inputArray array containing the keys
+	 * @param low lower index
+	 * @param high upper index
+	 * @param ks absolute indices in [low, high], in any order, duplicates allowed
+	 * @return the selected keys, in the order of ks
+	 */
+	public static int[] multiSelect(int inputArray[], int low, int high, int ks[]) {
+		int[] sorted = ks.clone();
+		Arrays.sort(sorted);
+		if (sorted.length > 0 && (sorted[0] < low || sorted[sorted.length - 1] > high)) {
+			throw new IllegalArgumentException("ranks must lie in [" + low + ", " + high + "]");
+		}
+		multiSelect(inputArray, low, high, sorted, 0, sorted.length - 1);
+
+		int[] keys = new int[ks.length];
+		for (int i = 0; i < ks.length; i++) {
+			keys[i] = inputArray[ks[i]];
+		}
+		return keys;
+	}
+
+	private static void multiSelect(int inputArray[], int low, int high, int ks[], int from, int to) {
+		//Drop ranks already fixed by an enclosing select.
+		while (from <= to && ks[from] < low) {
+			from++;
+		}
+		while (from <= to && ks[to] > high) {
+			to--;
+		}
+		if (from > to) {
+			return;
+		}
+		int m = (from + to) >>> 1;
+		int k = ks[m];
+		select(inputArray, low, high, k);
+		multiSelect(inputArray, low, k - 1, ks, from, m - 1);
+		multiSelect(inputArray, k + 1, high, ks, m + 1, to);
+	}
+
+	/**
+	 * Nearest-rank percentiles of the whole array. Reorders inputArray.
+	 * @param inputArray array containing the keys, not empty
+	 * @param quantiles fractions between 0 and 1, e.g. 0.5, 0.95, 0.99
+	 * @return the key at each quantile, in the order given
+	 */
+	public static int[] percentiles(int inputArray[], double... quantiles) {
+		int n = inputArray.length;
+		int[] ks = new int[quantiles.length];
+		for (int i = 0; i < quantiles.length; i++) {
+			int rank = (int) Math.ceil(quantiles[i] * n) - 1;
+			ks[i] = Math.max(0, Math.min(n - 1, rank));
+		}
+		return multiSelect(inputArray, 0, n - 1, ks);
+	}
+
+	/**
+	 * Leaves the k smallest keys of [low, high] sorted in [low, low + k - 1].
+	 * The rest of the range is left in no particular order.
+	 * @param inputArray array containing the keys
+	 * @param low lower index
+	 * @param high upper index
+	 * @param k number of keys to sort
+	 */
+	public static void partialSort(int inputArray[], int low, int high, int k) {
+		if (k <= 0) {
+			return;
+		}
+		int last = Math.min(high, low + k - 1);
+		if (last < high) {
+			select(inputArray, low, high, last);
+		}
+		quicksort.introSort(inputArray, low, last);
+	}
+
+	/**
+	 * Leaves the k largest keys of [low, high] sorted in [high - k + 1, high].
+	 * The rest of the range is left in no particular order.
+	 * @param inputArray array containing the keys
+	 * @param low lower index
+	 * @param high upper index
+	 * @param k number of keys to sort
+	 */
+	public static void topK(int inputArray[], int low, int high, int k) {
+		if (k <= 0) {
+			return;
+		}
+		int first = Math.max(low, high - k + 1);
+		if (first > low) {
+			select(inputArray, low, high, first);
+		}
+		quicksort.introSort(inputArray, first, high);
+	}
+
+	/**
+	 * main method compares percentile queries against a full sort.
+	 * @param args	"<count> <distribution> <quantiles>", e.g. "10000000 random 0.5,0.9,0.99,0.999"
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.out.println("Usage: <count> <distribution> <quantiles>. Distributions: " + Arrays.toString(sortInputs.DISTRIBUTIONS));
+			System.exit(0);
+		}
+		int n = Integer.parseInt(args[0]);
+		double[] quantiles = Arrays.stream(args[2].split(",")).mapToDouble(Double::parseDouble).toArray();
+		int[] input = sortInputs.generate(args[1], n, sortBenchmark.SEED);
+
+		int[] selectArray = input.clone();
+		long start = System.nanoTime();
+		int[] selected = percentiles(selectArray, quantiles);
+		long selectNanos = System.nanoTime() - start;
+
+		int[] sortArray = input.clone();
+		start = System.nanoTime();
+		Arrays.sort(sortArray);
+		long sortNanos = System.nanoTime() - start;
+
+		for (int i = 0; i < quantiles.length; i++) {
+			int rank = Math.max(0, Math.min(n - 1, (int) Math.ceil(quantiles[i] * n) - 1));
+			System.out.println("p" + quantiles[i] * 100 + " = " + selected[i]
+					+ (selected[i] == sortArray[rank] ? "" : " (MISMATCH: sorted gives " + sortArray[rank] + ")"));
+		}
+		System.out.println("multiSelect took " + selectNanos / 1000000 + " ms, Arrays.sort took " + sortNanos / 1000000 + " ms.");
+	}
+}
@@ -9,89 +9,1061 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.Math;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class quicksort {
 
 	/**
-	 * static variable to track swap ops for performance measurement
+	 * Whether the engines report to a probe at all, from -Dquicksort.probe (default true).
+	 * When false, probe is the constant NONE and the JIT removes every probe call.
+	 */
+	static final boolean PROBING = Boolean.parseBoolean(System.getProperty("quicksort.probe", "true"));
+	
+	/**
+	 * Where processArrays and callers install a probe, e.g. a sortProbe.recorder.
+	 */
+	static final sortProbe.switchable probes = new sortProbe.switchable();
+	
+	/**
+	 * Instrumentation hook called by every engine at compare, swap and partition points.
+	 * Forwards to the probe installed in probes, or is NONE if PROBING is off.
 	 */
-	static int swaps = 0;
+	static final sortProbe probe = PROBING ? probes : sortProbe.NONE;
+	
 	/**
-	 *  static variable to track comparision ops for performance measurement
+	 * Recorder used by processArrays to fill in the results table.
 	 */
-	static int comparisons = 0;
+	static final sortProbe.recorder recorder = new sortProbe.recorder();
 	
 	//table of results
 	static List<String> resultsTable = new ArrayList<String>();
 
 	/**
-	 * method to find the median pivot and swap it with the last element
-	 * in order to reuse our stock partition function with the benefit of
-	 * median-of-3.
+	 * method to find the median pivot and partition around it three ways, so every
+	 * key equal to the pivot lands in one run that never needs sorting again.
+	 * Samples are taken from the current [low, high] range only, and large ranges
+	 * use Tukey's ninther instead of a single median-of-3.
 	 * @param inputArray array contianing values to be sorted
 	 * @param low lower index
 	 * @param high upper index
-	 * @return
+	 * @return {lt, gt}, the bounds of the range equal to the pivot
 	 */
-	public static int medianPivot(int inputArray[], int low, int high) {
-		
-		int median = medianOfThree(inputArray[0], inputArray[(high)/2], inputArray[inputArray.length -1]);
-		
-		//Swap the median value with the highest value (inputArray[high])
-		//This way we can reuse our common partition() function instead of building one dedicated for median of 3
-		if (median == inputArray[0]) {
-			inputArray = swap(inputArray, 0, high);
-		} else if  (median == inputArray[(high)/2]) {
-			inputArray = swap(inputArray, (high) / 2, high);
+	public static int[] medianPivot(int inputArray[], int low, int high) {
+		return partitionThreeWay(inputArray, low, high, ADAPTIVE_PIVOT);
+	}
+	
+	/**
+	 * Strategy for choosing a pivot within [low, high]. Implementations return the
+	 * index of the chosen pivot and do not move any elements.
+	 */
+	interface pivotStrategy {
+		int choosePivot(int inputArray[], int low, int high);
+	}
+	
+	/**
+	 * Ranges larger than this use the ninther in ADAPTIVE_PIVOT.
+	 */
+	static final int NINTHER_THRESHOLD = 40;
+	
+	/**
+	 * The stock textbook choice: the last element of the range.
+	 */
+	static final pivotStrategy LAST_PIVOT = (inputArray, low, high) -> high;
+	
+	/**
+	 * Median of the first, middle and last elements of the range.
+	 */
+	static final pivotStrategy MEDIAN_OF_THREE = (inputArray, low, high) ->
+		medianOfThreeIndex(inputArray, low, (low + high) >>> 1, high);
+	
+	/**
+	 * Tukey's ninther: the median of the medians of three evenly spaced triples.
+	 */
+	static final pivotStrategy NINTHER = quicksort::ninther;
+	
+	/**
+	 * Median-of-3 for small ranges, ninther for large ones.
+	 */
+	static final pivotStrategy ADAPTIVE_PIVOT = (inputArray, low, high) ->
+		(high - low + 1 > NINTHER_THRESHOLD) ? ninther(inputArray, low, high)
+				: medianOfThreeIndex(inputArray, low, (low + high) >>> 1, high);
+	
+	/**
+	 * Tukey's ninther over [low, high].
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @return index of the ninther
+	 */
+	public static int ninther(int inputArray[], int low, int high) {
+		int eighth = (high - low + 1) >>> 3;
+		int mid = (low + high) >>> 1;
+		int m1 = medianOfThreeIndex(inputArray, low, low + eighth, low + 2 * eighth);
+		int m2 = medianOfThreeIndex(inputArray, mid - eighth, mid, mid + eighth);
+		int m3 = medianOfThreeIndex(inputArray, high - 2 * eighth, high - eighth, high);
+		return medianOfThreeIndex(inputArray, m1, m2, m3);
+	}
+	
+	/**
+	 * Helper function to find the index of the median among 3 array elements.
+	 * Uses plain comparisons, so it cannot overflow.
+	 * @param inputArray array containing the values
+	 * @param i first index
+	 * @param j second index
+	 * @param k third index
+	 * @return whichever of i, j, k holds the median value
+	 */
+	public static int medianOfThreeIndex(int inputArray[], int i, int j, int k) {
+		int a = inputArray[i], b = inputArray[j], c = inputArray[k];
+		if (a < b) {
+			if (b < c) {
+				probe.compare(2);
+				return j;
+			}
+			probe.compare(3);
+			return (a < c) ? k : i;
 		} else {
-			//do nothing, pivot point is already at index high
+			if (a < c) {
+				probe.compare(2);
+				return i;
+			}
+			probe.compare(3);
+			return (b < c) ? k : j;
 		}
-		
-		return partition(inputArray, low, high-1);
+	}
+	
+	/**
+	 * Partitions [low, high] around the pivot chosen by a pivotStrategy. The pivot is
+	 * swapped to the end so the stock partition function can be reused.
+	 * @param inputArray array of values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param strategy pivot selection strategy
+	 * @return final index of the pivot
+	 */
+	public static int partition(int inputArray[], int low, int high, pivotStrategy strategy) {
+		int pivotIndex = strategy.choosePivot(inputArray, low, high);
+		if (pivotIndex != high) {
+			swap(inputArray, pivotIndex, high);
+			probe.swap(1);
+		}
+		return partition(inputArray, low, high);
 	}
 
 
 	/**
-	 * Just like quicksort, but calls medianPartition in order to pivot on the median-of-3
+	 * Just like quicksort, but calls medianPivot in order to pivot on the median-of-3.
+	 * The run of keys equal to the pivot is skipped, and the method recurses on the
+	 * smaller side and loops on the larger one, so the stack stays O(lgn) deep.
 	 * @param inputArray array containing values to be sorted
 	 * @param low lower index
 	 * @param high upper index
 	 */
 	public static void medianQuickSort(int inputArray[], int low, int high) {
+		medianQuickSort(inputArray, low, high, 0);
+	}
+	
+	static void medianQuickSort(int inputArray[], int low, int high, int depth) {
+		while (low < high) {
+			int[] bounds = medianPivot(inputArray, low, high);
+			int lt = bounds[0];
+			int gt = bounds[1];
+			probe.partition(high - low + 1, lt - low, depth);
+			depth++;
+			
+			if (lt - low < high - gt) {
+				medianQuickSort(inputArray, low, lt - 1, depth);
+				low = gt + 1;
+			} else {
+				medianQuickSort(inputArray, gt + 1, high, depth);
+				high = lt - 1;
+			}
+		}
+	}
+	
+	/**
+	 * Stock quicksort implementation, after the textbook: last element as the pivot.
+	 * Partitions three ways, so runs of equal keys are skipped and inputs with few
+	 * distinct values sort in close to linear time. In-order input is still its
+	 * worst case, as in the textbook.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void quickSort(int inputArray[], int low, int high) {
+		quickSort(inputArray, low, high, 0);
+	}
+	
+	/**
+	 * Quicksort with a selectable partition kernel. Uses the adaptive pivot and the
+	 * introsort structure (insertion sort cutoff, heapsort fallback, O(lgn) stack), so
+	 * only the partition loop itself varies between kernels.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param kernel partition kernel, e.g. SCALAR_PARTITION
+	 */
+	public static void quickSort(int inputArray[], int low, int high, partitionKernel kernel) {
 		if (low >= high)
 			return;
+		
+		introSort(inputArray, low, high, 0, 2 * floorLog2(high - low + 1), kernel);
+	}
+	
+	static void quickSort(int inputArray[], int low, int high, int depth) {
+		threeWayQuickSort(inputArray, low, high, LAST_PIVOT, depth);
+	}
 
-		if (low < high) {
-
-			int medianPartition = medianPivot(inputArray, low, high);
+	
+	/**
+	 * Quicksort with three-way partitioning on the stock (last element) pivot.
+	 * Keys equal to the pivot are grouped in the middle and never recursed on,
+	 * so inputs with few distinct values sort in close to linear time. quickSort
+	 * now partitions this way too; this name is kept for existing callers.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void threeWayQuickSort(int inputArray[], int low, int high) {
+		threeWayQuickSort(inputArray, low, high, LAST_PIVOT);
+	}
+	
+	/**
+	 * Just like threeWayQuickSort, but pivots on the median-of-3 (ninther for large ranges).
+	 * Same algorithm as medianQuickSort.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void medianThreeWayQuickSort(int inputArray[], int low, int high) {
+		threeWayQuickSort(inputArray, low, high, ADAPTIVE_PIVOT);
+	}
+	
+	/**
+	 * Three-way quicksort with a selectable pivot strategy. Recurses on the smaller
+	 * of the < and > ranges and loops on the larger one.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param strategy pivot selection strategy
+	 */
+	public static void threeWayQuickSort(int inputArray[], int low, int high, pivotStrategy strategy) {
+		threeWayQuickSort(inputArray, low, high, strategy, 0);
+	}
+	
+	static void threeWayQuickSort(int inputArray[], int low, int high, pivotStrategy strategy, int depth) {
+		while (low < high) {
+			int[] bounds = partitionThreeWay(inputArray, low, high, strategy);
+			int lt = bounds[0];
+			int gt = bounds[1];
+			probe.partition(high - low + 1, lt - low, depth);
+			depth++;
 			
-			medianQuickSort(inputArray, low, medianPartition -1);
-			medianQuickSort(inputArray, medianPartition + 1, high);
-
+			if (lt - low < high - gt) {
+				threeWayQuickSort(inputArray, low, lt - 1, strategy, depth);
+				low = gt + 1;
+			} else {
+				threeWayQuickSort(inputArray, gt + 1, high, strategy, depth);
+				high = lt - 1;
+			}
+		}
+	}
+	
+	/**
+	 * Dijkstra's three-way (Dutch national flag) partition. On return
+	 * [low, lt-1] < pivot, [lt, gt] == pivot and [gt+1, high] > pivot.
+	 * @param inputArray array of values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param strategy pivot selection strategy
+	 * @return {lt, gt}, the bounds of the range equal to the pivot
+	 */
+	public static int[] partitionThreeWay(int inputArray[], int low, int high, pivotStrategy strategy) {
+		int pivot = inputArray[strategy.choosePivot(inputArray, low, high)];
+		int lt = low;
+		int i = low;
+		int gt = high;
+		int compared = 0;
+		int swapped = 0;
+		
+		while (i <= gt) {
+			int value = inputArray[i];
+			compared++;
+			if (value < pivot) {
+				swap(inputArray, lt++, i++);
+				swapped++;
+			} else {
+				compared++;
+				if (value > pivot) {
+					swap(inputArray, i, gt--);
+					swapped++;
+				} else {
+					i++;
+				}
+			}
 		}
+		probe.compare(compared);
+		probe.swap(swapped);
+		return new int[] { lt, gt };
 	}
 	
 	/**
-	 * Stock quicksort implementation, copied from the textbook.
+	 * Dual-pivot quicksort (Yaroslavskiy). Partitions around two pivots p <= q into
+	 * [< p], [p..q] and [> q] in a single pass. Pivots are taken from the tertiles of
+	 * the range, so in-order input does not degrade. Small ranges are finished with
+	 * insertion sort. Recurses on the two smaller parts and loops on the largest.
+	 * Like introSort, a range partitioned more than 2*lg(n) deep is finished with
+	 * heapsort, so adversarial input cannot make it quadratic.
 	 * @param inputArray array containing values to be sorted
 	 * @param low lower index
 	 * @param high upper index
 	 */
-	public static void quickSort(int inputArray[], int low, int high) {
+	public static void dualPivotQuickSort(int inputArray[], int low, int high) {
 		if (low >= high)
 			return;
 		
-		if (low < high) {
-			int quickPartition = partition(inputArray, low, high);
-
-			quickSort(inputArray, low, quickPartition - 1);
-			quickSort(inputArray, quickPartition + 1, high);
+		dualPivotQuickSort(inputArray, low, high, 0, 2 * floorLog2(high - low + 1));
+	}
+	
+	static void dualPivotQuickSort(int inputArray[], int low, int high, int depth, int maxDepth) {
+		while (high - low + 1 > INSERTION_CUTOFF) {
+			if (depth >= maxDepth) {
+				heapSort(inputArray, low, high);
+				return;
+			}
+			
+			//Move the tertile samples to the ends and order them as p <= q.
+			int third = (high - low) / 3;
+			swap(inputArray, low, low + third);
+			swap(inputArray, high, high - third);
+			int swapped = 2;
+			int compared = 1;
+			if (inputArray[low] > inputArray[high]) {
+				swap(inputArray, low, high);
+				swapped++;
+			}
+			int p = inputArray[low];
+			int q = inputArray[high];
+			
+			//lt: end of the < p part, gt: start of the > q part, k: scan index.
+			int lt = low + 1;
+			int gt = high - 1;
+			int k = lt;
+			while (k <= gt) {
+				compared++;
+				if (inputArray[k] < p) {
+					swap(inputArray, k, lt++);
+					swapped++;
+				} else {
+					compared++;
+					if (inputArray[k] > q) {
+						while (k < gt) {
+							compared++;
+							if (inputArray[gt] <= q) {
+								break;
+							}
+							gt--;
+						}
+						swap(inputArray, k, gt--);
+						swapped++;
+						compared++;
+						if (inputArray[k] < p) {
+							swap(inputArray, k, lt++);
+							swapped++;
+						}
+					}
+				}
+				k++;
+			}
+			
+			//Drop the pivots into their final positions.
+			lt--;
+			gt++;
+			swap(inputArray, low, lt);
+			swap(inputArray, high, gt);
+			swapped += 2;
+			probe.compare(compared);
+			probe.swap(swapped);
+			probe.partition(high - low + 1, lt - low, depth);
+			depth++;
+			
+			//Three parts: [low, lt-1], [lt+1, gt-1] and [gt+1, high]. The middle part
+			//is all equal when p == q and can be skipped.
+			int leftSize = lt - low;
+			int middleSize = (p == q) ? 0 : gt - lt - 1;
+			int rightSize = high - gt;
+			if (rightSize >= leftSize && rightSize >= middleSize) {
+				dualPivotQuickSort(inputArray, low, lt - 1, depth, maxDepth);
+				if (middleSize > 0) dualPivotQuickSort(inputArray, lt + 1, gt - 1, depth, maxDepth);
+				low = gt + 1;
+			} else if (leftSize >= middleSize) {
+				if (middleSize > 0) dualPivotQuickSort(inputArray, lt + 1, gt - 1, depth, maxDepth);
+				dualPivotQuickSort(inputArray, gt + 1, high, depth, maxDepth);
+				high = lt - 1;
+			} else {
+				dualPivotQuickSort(inputArray, low, lt - 1, depth, maxDepth);
+				dualPivotQuickSort(inputArray, gt + 1, high, depth, maxDepth);
+				low = lt + 1;
+				high = gt - 1;
+			}
 		}
+		insertionSort(inputArray, low, high);
+	}
+	
+	/**
+	 * Iterative quicksort with an explicit int[] stack instead of recursion. After each
+	 * partition the larger side is pushed and the loop continues on the smaller side,
+	 * so at most lg(n) ranges are ever pending and the stack is a fixed 3*32 ints.
+	 * Pivots use ADAPTIVE_PIVOT and small ranges finish with insertion sort. Like
+	 * introSort, a range partitioned more than 2*lg(n) deep is finished with heapsort,
+	 * so runs of equal keys cannot make the time quadratic.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void iterativeQuickSort(int inputArray[], int low, int high) {
+		//Each pending range takes 3 ints (low, high, depth), and each pushed range is at
+		//least twice the size of the range being worked on, so 32 pending ranges suffice.
+		int[] stack = new int[96];
+		int top = 0;
+		int depth = 0;
+		int maxDepth = 2 * floorLog2(Math.max(1, high - low + 1));
+		
+		while (true) {
+			while (high - low + 1 > INSERTION_CUTOFF) {
+				if (depth >= maxDepth) {
+					heapSort(inputArray, low, high);
+					//Empty the range so insertion sort has nothing left to do.
+					low = high;
+					break;
+				}
+				int p = partition(inputArray, low, high, ADAPTIVE_PIVOT);
+				probe.partition(high - low + 1, p - low, depth);
+				depth++;
+				if (p - low < high - p) {
+					stack[top++] = p + 1;
+					stack[top++] = high;
+					stack[top++] = depth;
+					high = p - 1;
+				} else {
+					stack[top++] = low;
+					stack[top++] = p - 1;
+					stack[top++] = depth;
+					low = p + 1;
+				}
+			}
+			insertionSort(inputArray, low, high);
+			
+			if (top == 0) {
+				return;
+			}
+			depth = stack[--top];
+			high = stack[--top];
+			low = stack[--top];
+		}
+	}
+	
+	/**
+	 * Block size, in elements, of the offset buffers used by blockPartition.
+	 */
+	static final int PARTITION_BLOCK = 128;
+	
+	/**
+	 * BlockQuicksort (Edelkamp and Weiss). Same structure as introSort, but partitions
+	 * with blockPartition, which avoids the data-dependent branch in the stock
+	 * partition loop that is mispredicted about half the time on random keys.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void blockQuickSort(int inputArray[], int low, int high) {
+		if (low >= high)
+			return;
+		
+		int[] offsetsLeft = new int[PARTITION_BLOCK];
+		int[] offsetsRight = new int[PARTITION_BLOCK];
+		blockQuickSort(inputArray, low, high, 0, 2 * floorLog2(high - low + 1), offsetsLeft, offsetsRight);
+	}
+	
+	static void blockQuickSort(int inputArray[], int low, int high, int depth, int maxDepth, int offsetsLeft[], int offsetsRight[]) {
+		while (high - low + 1 > INSERTION_CUTOFF) {
+			if (depth >= maxDepth) {
+				heapSort(inputArray, low, high);
+				return;
+			}
+			
+			int p = blockPartition(inputArray, low, high, offsetsLeft, offsetsRight);
+			probe.partition(high - low + 1, p - low, depth);
+			depth++;
+			if (p - low < high - p) {
+				blockQuickSort(inputArray, low, p - 1, depth, maxDepth, offsetsLeft, offsetsRight);
+				low = p + 1;
+			} else {
+				blockQuickSort(inputArray, p + 1, high, depth, maxDepth, offsetsLeft, offsetsRight);
+				high = p - 1;
+			}
+		}
+		insertionSort(inputArray, low, high);
+	}
+	
+	/**
+	 * Block partition. Scans a block from each end and records, without branching,
+	 * the offsets of the elements that are on the wrong side of the pivot. The recorded
+	 * elements are then swapped in bulk. Whatever is left when fewer than two blocks
+	 * remain is finished with the stock partition function.
+	 * @param inputArray array of values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param offsetsLeft scratch buffer of PARTITION_BLOCK ints
+	 * @param offsetsRight scratch buffer of PARTITION_BLOCK ints
+	 * @return final index of the pivot
+	 */
+	public static int blockPartition(int inputArray[], int low, int high, int offsetsLeft[], int offsetsRight[]) {
+		//Pivot on the median-of-3/ninther, parked at high.
+		int pivotIndex = ADAPTIVE_PIVOT.choosePivot(inputArray, low, high);
+		swap(inputArray, pivotIndex, high);
+		probe.swap(1);
+		long pivot = inputArray[high];
+		
+		int l = low;
+		int r = high - 1;
+		int numLeft = 0, numRight = 0, startLeft = 0, startRight = 0;
+		while (r - l + 1 > 2 * PARTITION_BLOCK) {
+			//Left block: record elements >= pivot. The sign bit of (pivot - x - 1)
+			//is 1 exactly when x >= pivot; long arithmetic cannot overflow.
+			if (numLeft == 0) {
+				startLeft = 0;
+				for (int i = 0; i < PARTITION_BLOCK; i++) {
+					offsetsLeft[numLeft] = i;
+					numLeft += (int) ((pivot - inputArray[l + i] - 1) >>> 63);
+				}
+				probe.compare(PARTITION_BLOCK);
+			}
+			//Right block: record elements <= pivot.
+			if (numRight == 0) {
+				startRight = 0;
+				for (int i = 0; i < PARTITION_BLOCK; i++) {
+					offsetsRight[numRight] = i;
+					numRight += (int) ((inputArray[r - i] - pivot - 1) >>> 63);
+				}
+				probe.compare(PARTITION_BLOCK);
+			}
+			
+			//Swap misplaced pairs in bulk.
+			int num = Math.min(numLeft, numRight);
+			for (int j = 0; j < num; j++) {
+				swap(inputArray, l + offsetsLeft[startLeft + j], r - offsetsRight[startRight + j]);
+			}
+			probe.swap(num);
+			numLeft -= num;
+			numRight -= num;
+			startLeft += num;
+			startRight += num;
+			
+			//A block with nothing left to swap is fully on the correct side.
+			if (numLeft == 0) {
+				l += PARTITION_BLOCK;
+			}
+			if (numRight == 0) {
+				r -= PARTITION_BLOCK;
+			}
+		}
+		
+		//Now [low, l) <= pivot and (r, high) >= pivot. Move the pivot next to the
+		//unresolved range [l, r] and finish it with the stock partition.
+		swap(inputArray, r + 1, high);
+		probe.swap(1);
+		return partition(inputArray, l, r + 1);
+	}
+	
+	/**
+	 * Partitions of this size or smaller are sorted sequentially by parallelQuickSort.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 13;
+	
+	/**
+	 * Fork/join quicksort on the common pool with the default size threshold.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void parallelQuickSort(int inputArray[], int low, int high) {
+		parallelQuickSort(inputArray, low, high, PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Fork/join quicksort. Ranges larger than threshold are partitioned and the larger
+	 * side is forked as a RecursiveAction; smaller ranges are finished by introSort on
+	 * the worker thread. Instrumentation goes through the shared probe, whose recorder
+	 * is thread-safe.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param threshold range size below which the sequential engine is used
+	 * @param pool the pool to run on
+	 */
+	public static void parallelQuickSort(int inputArray[], int low, int high, int threshold, ForkJoinPool pool) {
+		if (low >= high)
+			return;
+		
+		pool.invoke(new parallelSortTask(inputArray, low, high, Math.max(threshold, INSERTION_CUTOFF),
+				0, 2 * floorLog2(high - low + 1)));
+	}
+	
+	/**
+	 * Fork/join task for parallelQuickSort. Keeps the introsort depth limit, so a bad
+	 * run of pivots falls back to heapsort instead of degrading to O(n^2).
+	 */
+	static class parallelSortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] inputArray;
+		private int low;
+		private int high;
+		private final int threshold;
+		private int depth;
+		private final int maxDepth;
+		
+		parallelSortTask(int inputArray[], int low, int high, int threshold, int depth, int maxDepth) {
+			this.inputArray = inputArray;
+			this.low = low;
+			this.high = high;
+			this.threshold = threshold;
+			this.depth = depth;
+			this.maxDepth = maxDepth;
+		}
+		
+		@Override
+		protected void compute() {
+			List<parallelSortTask> forked = new ArrayList<parallelSortTask>();
+			while (high - low + 1 > threshold) {
+				if (depth >= maxDepth) {
+					heapSort(inputArray, low, high);
+					break;
+				}
+				
+				int p = partition(inputArray, low, high, ADAPTIVE_PIVOT);
+				probe.partition(high - low + 1, p - low, depth);
+				depth++;
+				
+				//Fork the larger side, keep partitioning the smaller side here.
+				parallelSortTask task;
+				if (p - low > high - p) {
+					task = new parallelSortTask(inputArray, low, p - 1, threshold, depth, maxDepth);
+					low = p + 1;
+				} else {
+					task = new parallelSortTask(inputArray, p + 1, high, threshold, depth, maxDepth);
+					high = p - 1;
+				}
+				task.fork();
+				forked.add(task);
+			}
+			if (high - low + 1 <= threshold) {
+				introSort(inputArray, low, high, depth, maxDepth);
+			}
+			for (parallelSortTask task : forked) {
+				task.join();
+			}
+		}
+	}
+	
+	/**
+	 * Partitions of this size or smaller are finished with insertion sort by introSort.
+	 */
+	static final int INSERTION_CUTOFF = 16;
+	
+	/**
+	 * Introsort: quicksort that tracks its recursion depth and switches to heapsort
+	 * once the depth passes 2*lg(n), so adversarial inputs such as the in-order
+	 * sequences from generateSequences() still sort in O(nlgn). Small partitions
+	 * are finished with insertion sort.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void introSort(int inputArray[], int low, int high) {
+		if (low >= high)
+			return;
+		
+		introSort(inputArray, low, high, 0, 2 * floorLog2(high - low + 1));
+	}
+	
+	/**
+	 * Recursive introsort body. Recurses on the smaller partition and loops on the
+	 * larger one, so the call stack stays O(lgn) deep.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param depth partitioning depth of this range
+	 * @param maxDepth depth at which to fall back to heapsort
+	 */
+	static void introSort(int inputArray[], int low, int high, int depth, int maxDepth) {
+		introSort(inputArray, low, high, depth, maxDepth, SCALAR_PARTITION);
+	}
+	
+	/**
+	 * Introsort body with a selectable partition kernel.
+	 * @param kernel partitions each range once its pivot is at the end
+	 */
+	static void introSort(int inputArray[], int low, int high, int depth, int maxDepth, partitionKernel kernel) {
+		while (high - low + 1 > INSERTION_CUTOFF) {
+			if (depth >= maxDepth) {
+				heapSort(inputArray, low, high);
+				return;
+			}
+			
+			int pivotIndex = ADAPTIVE_PIVOT.choosePivot(inputArray, low, high);
+			if (pivotIndex != high) {
+				swap(inputArray, pivotIndex, high);
+				probe.swap(1);
+			}
+			int introPartition = kernel.partition(inputArray, low, high);
+			probe.partition(high - low + 1, introPartition - low, depth);
+			depth++;
+			
+			if (introPartition - low < high - introPartition) {
+				introSort(inputArray, low, introPartition - 1, depth, maxDepth, kernel);
+				low = introPartition + 1;
+			} else {
+				introSort(inputArray, introPartition + 1, high, depth, maxDepth, kernel);
+				high = introPartition - 1;
+			}
+		}
+		insertionSort(inputArray, low, high);
+	}
+	
+	/**
+	 * Partition step with the contract of the stock partition function: the pivot is
+	 * already at inputArray[high], keys <= pivot end up before it and keys > pivot after
+	 * it, and the pivot's final index is returned. Lets a faster kernel, such as the
+	 * SIMD one in vectorPartition, replace the scalar loop.
+	 */
+	interface partitionKernel {
+		int partition(int inputArray[], int low, int high);
+	}
+	
+	/**
+	 * The stock scalar partition loop.
+	 */
+	static final partitionKernel SCALAR_PARTITION = quicksort::partition;
+	
+	/**
+	 * Insertion sort on the subrange [low, high]. Counts one swap per element shifted.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void insertionSort(int inputArray[], int low, int high) {
+		int compared = 0;
+		int moved = 0;
+		for (int i = low + 1; i <= high; i++) {
+			int key = inputArray[i];
+			int j = i - 1;
+			while (j >= low) {
+				compared++;
+				if (inputArray[j] <= key) {
+					break;
+				}
+				inputArray[j + 1] = inputArray[j];
+				moved++;
+				j--;
+			}
+			inputArray[j + 1] = key;
+		}
+		probe.compare(compared);
+		probe.swap(moved);
+	}
+	
+	/**
+	 * Heapsort on the subrange [low, high]. Used by introSort as its worst-case fallback.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void heapSort(int inputArray[], int low, int high) {
+		int n = high - low + 1;
+		
+		//Build a max-heap over the subrange.
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(inputArray, low, i, n);
+		}
+		
+		//Repeatedly move the max to the end and restore the heap.
+		for (int end = n - 1; end > 0; end--) {
+			swap(inputArray, low, low + end);
+			siftDown(inputArray, low, 0, end);
+		}
+		probe.swap(Math.max(0, n - 1));
+	}
+	
+	/**
+	 * Helper function for heapSort. Sifts heap node i down within a heap of size n
+	 * whose root is stored at inputArray[offset].
+	 */
+	static void siftDown(int inputArray[], int offset, int i, int n) {
+		int value = inputArray[offset + i];
+		int compared = 0;
+		int moved = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n) {
+				compared++;
+				if (inputArray[offset + child + 1] > inputArray[offset + child]) {
+					child++;
+				}
+			}
+			compared++;
+			if (inputArray[offset + child] <= value) {
+				break;
+			}
+			inputArray[offset + i] = inputArray[offset + child];
+			moved++;
+			i = child;
+		}
+		inputArray[offset + i] = value;
+		probe.compare(compared);
+		probe.swap(moved);
+	}
+	
+	/**
+	 * Helper function returns floor(lg(n)) for n > 0.
+	 */
+	static int floorLog2(int n) {
+		return 31 - Integer.numberOfLeadingZeros(n);
+	}
+	
+	/**
+	 * LSD radix sort on [low, high], 8 bits per pass from the least significant byte up.
+	 * The sign bit is flipped on the top byte so negative keys sort first. A pass is
+	 * skipped when every key has the same digit, so narrow key ranges take fewer passes.
+	 * Reports passes and bytes moved to the probe instead of comparisons and swaps.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void radixSort(int inputArray[], int low, int high) {
+		int n = high - low + 1;
+		if (n < 2)
+			return;
+		
+		int[] buffer = new int[n];
+		int[] counts = new int[256];
+		int passes = 0;
+		
+		//src/dst alternate between the input range and the buffer.
+		int[] src = inputArray;
+		int srcOffset = low;
+		int[] dst = buffer;
+		int dstOffset = 0;
+		
+		for (int shift = 0; shift < 32; shift += 8) {
+			int flip = (shift == 24) ? 0x80 : 0;
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++) {
+				counts[((src[srcOffset + i] >>> shift) & 0xFF) ^ flip]++;
+			}
+			if (counts[((src[srcOffset] >>> shift) & 0xFF) ^ flip] == n) {
+				continue;
+			}
+			
+			//Prefix sums turn the counts into starting offsets.
+			int sum = 0;
+			for (int d = 0; d < 256; d++) {
+				int c = counts[d];
+				counts[d] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < n; i++) {
+				int value = src[srcOffset + i];
+				dst[dstOffset + counts[((value >>> shift) & 0xFF) ^ flip]++] = value;
+			}
+			passes++;
+			
+			int[] tmp = src; src = dst; dst = tmp;
+			int tmpOffset = srcOffset; srcOffset = dstOffset; dstOffset = tmpOffset;
+		}
+		
+		//An odd number of passes leaves the result in the buffer.
+		long bytesMoved = 4L * n * passes;
+		if (src != inputArray) {
+			System.arraycopy(src, srcOffset, inputArray, low, n);
+			bytesMoved += 4L * n;
+		}
+		probe.radix(passes, bytesMoved);
+	}
+	
+	/**
+	 * LSD radix sort of long keys on their high 32 bits only, as signed ints, 8 bits per
+	 * pass. The low 32 bits are carried along unsorted; because every pass is stable,
+	 * keys with equal high halves keep their input order. That makes it the sort for
+	 * keys packed as value << 32 | index, used by argsort and assignmentOne.sortPacked.
+	 * Passes are skipped and reported to the probe as in radixSort.
+	 * @param keys keys to be sorted in place
+	 */
+	public static void radixSortHigh(long keys[]) {
+		int n = keys.length;
+		if (n < 2)
+			return;
+		
+		long[] buffer = new long[n];
+		long[] src = keys;
+		long[] dst = buffer;
+		int[] counts = new int[256];
+		int passes = 0;
+		
+		for (int shift = 32; shift < 64; shift += 8) {
+			int flip = (shift == 56) ? 0x80 : 0;
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++) {
+				counts[((int) (src[i] >>> shift) & 0xFF) ^ flip]++;
+			}
+			if (counts[((int) (src[0] >>> shift) & 0xFF) ^ flip] == n) {
+				continue;
+			}
+			
+			//Prefix sums turn the counts into starting offsets.
+			int sum = 0;
+			for (int d = 0; d < 256; d++) {
+				int c = counts[d];
+				counts[d] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < n; i++) {
+				long key = src[i];
+				dst[counts[((int) (key >>> shift) & 0xFF) ^ flip]++] = key;
+			}
+			passes++;
+			
+			long[] tmp = src; src = dst; dst = tmp;
+		}
+		
+		long bytesMoved = 8L * n * passes;
+		if (src != keys) {
+			System.arraycopy(src, 0, keys, 0, n);
+			bytesMoved += 8L * n;
+		}
+		probe.radix(passes, bytesMoved);
+	}
+	
+	/**
+	 * Ranges of this size or larger are radix sorted by adaptiveSort.
+	 */
+	static final int RADIX_THRESHOLD = 4096;
+	
+	/**
+	 * Ranges of this size or smaller are insertion sorted by adaptiveSort.
+	 */
+	static final int ADAPTIVE_INSERTION_CUTOFF = 32;
+	
+	/**
+	 * Number of evenly spaced keys adaptiveSort samples before choosing an engine.
+	 */
+	static final int ADAPTIVE_SAMPLE = 64;
+	
+	/**
+	 * Adaptive front door. Picks an engine from the range size and a cheap sample of keys:
+	 * 	- tiny ranges: insertion sort;
+	 * 	- few distinct values in the sample: three-way quicksort, which skips duplicate runs;
+	 * 	- large ranges, or medium ones whose sampled min and max agree on their top 16
+	 * 	  bits: LSD radix sort. Every key between them shares those bits, so radix
+	 * 	  skips the two top passes. This is a guess from the sample; keys outside the
+	 * 	  sampled range only cost extra passes, never a wrong result;
+	 * 	- everything else: introsort.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void adaptiveSort(int inputArray[], int low, int high) {
+		int n = high - low + 1;
+		if (n <= ADAPTIVE_INSERTION_CUTOFF) {
+			insertionSort(inputArray, low, high);
+			return;
+		}
+		
+		//Sample evenly spaced keys for their range and number of distinct values.
+		int sampleSize = Math.min(n, ADAPTIVE_SAMPLE);
+		int[] sample = new int[sampleSize];
+		long step = ((long) n << 16) / sampleSize;
+		for (int i = 0; i < sampleSize; i++) {
+			sample[i] = inputArray[low + (int) ((i * step) >>> 16)];
+		}
+		Arrays.sort(sample);
+		int distinct = 1;
+		for (int i = 1; i < sampleSize; i++) {
+			if (sample[i] != sample[i - 1]) {
+				distinct++;
+			}
+		}
+		//Bits where the sampled min and max differ. Keys of opposite sign differ in the top bit.
+		int differing = sample[0] ^ sample[sampleSize - 1];
+		
+		if (distinct <= sampleSize / 8) {
+			medianThreeWayQuickSort(inputArray, low, high);
+		} else if (n >= RADIX_THRESHOLD || (n >= 8 * ADAPTIVE_SAMPLE && (differing >>> 16) == 0)) {
+			radixSort(inputArray, low, high);
+		} else {
+			introSort(inputArray, low, high);
+		}
+	}
+	
+	/**
+	 * Common signature of the sort engines, so processArrays can run any of them.
+	 */
+	interface sortEngine {
+		void sort(int inputArray[], int low, int high);
+	}
+	
+	/**
+	 * Helper function for processArrays. Sorts a fresh copy of inputArray with the given
+	 * engine, prints the stats, and adds a row to resultsTable.
+	 * @param label name of the method in the results table
+	 * @param engine the sort engine to run
+	 * @param inputArray unsorted input. Not modified.
+	 * @param format format string for resultsTable
+	 */
+	static void reportSort(String label, sortEngine engine, int inputArray[], String format) {
+		//Reset performance counters and record into them for the duration of this sort
+		recorder.reset();
+		sortProbe previous = probes.install(recorder);
+		
+		System.out.println("Sorting with " + label + ":");
+		int [] sortArray = inputArray.clone();
+		try {
+			engine.sort(sortArray, 0, sortArray.length - 1);
+		} finally {
+			probes.install(previous);
+		}
+		
+		//Radix sort does no comparisons, so report passes and bytes moved in their place.
+		String compared = Long.toString(recorder.comparisons());
+		String moved = Long.toString(recorder.swaps());
+		if (recorder.passes() > 0) {
+			compared = recorder.passes() + " passes";
+			moved = recorder.bytesMoved() + " bytes";
+			System.out.println(label + " sorted with " + recorder.passes() + " passes and " + recorder.bytesMoved() + " bytes moved.");
+		} else {
+			System.out.println(label + " sorted with " + recorder.swaps() + " swaps and " + recorder.comparisons() + " comparisons.");
+		}
+		if (recorder.partitions() > 0) {
+			System.out.println("Partitions: " + recorder.partitions() + ", max depth: " + recorder.maxDepth());
+		}
+		if (sortArray.length < 101) {
+			printArray(sortArray);
+		}
+		
+		String resultsString = String.format(format, label,
+				Integer.toString(inputArray.length), 
+				compared,
+				moved,
+				Double.toString(inputArray.length * (Math.log(inputArray.length) / Math.log(2))),
+				Integer.toString((inputArray.length * inputArray.length)));
+		resultsTable.add(resultsString);
 	}
-
 	
 	/**
 	 * Helper function to pretty-print an array. Used to help display sorting results on screen.
@@ -126,14 +1098,15 @@ public class quicksort {
 
 				// swap inputArray[i] and inputArray[j]
 				inputArray = swap(inputArray, i, j);
-				swaps++;
 			}
-			comparisons++;
 		}
 
 		// swap inputArray[i+1] and the pivot value
 		inputArray = swap(inputArray, i+1, high);
-		swaps++;
+		
+		//one comparison per scanned element, one swap per element moved left plus the pivot
+		probe.compare(high - low);
+		probe.swap(i + 2 - low);
 		return i + 1;
 
 	}
@@ -147,16 +1120,13 @@ public class quicksort {
 	 */
 	public static int medianOfThree(int a, int b, int c) {
 	    
-		//Clever trick to find median value with 2 comparisons.
-		//Definitely not pasted from stack overflow...
-		if ( (a - b) * (c - a) >= 0 ) // a >= b and a <= c OR a <= b and a >= c
+		//Compare directly rather than multiplying differences, which overflows on large ints.
+		if ((a >= b && a <= c) || (a <= b && a >= c))
 	        return a;
-	    else if ( (b - a) * (c - b) >= 0 ) // b >= a and b <= c OR b <= a and b >= c
+	    else if ((b >= a && b <= c) || (b <= a && b >= c))
 	        return b;
 	    else
 	        return c;
-		
-		//...it was totally pasted from stack overflow...
 	}
 	
 	/**
@@ -288,11 +1258,14 @@ public class quicksort {
     	//format string for resultsTable
     	String format = "|%1$-10s|%2$-10s|%3$-15s|%4$-15s|%5$-15s|%6$-15s";
     	
+    	//record the stock runs below into the shared recorder
+    	sortProbe previous = probes.install(recorder);
+    	if (!PROBING) {
+    		System.out.println("Probing is off (-Dquicksort.probe=false), so every count below is 0.");
+    	}
+    	
     	//loop through all of the integer arrays in integerArrays
     	for (int[] inputArray : inputArrays){
-			//reset performance counters
-			swaps = 0;
-			comparisons = 0;
 			int arraySize = inputArray.length;
 			System.out.println("Array size is " + arraySize + " elements.");
 			
@@ -301,13 +1274,27 @@ public class quicksort {
 			if(inputArray.length < 101) {
 				printArray(inputArray);
 			}
+			
+			//Every engine sorts its own copy of the same input
+			reportSort("Intro", quicksort::introSort, inputArray, format);
+			reportSort("Dual-Pivot", quicksort::dualPivotQuickSort, inputArray, format);
+			reportSort("Iterative", quicksort::iterativeQuickSort, inputArray, format);
+			reportSort("Block", quicksort::blockQuickSort, inputArray, format);
+			reportSort("Radix", quicksort::radixSort, inputArray, format);
+			reportSort("Adaptive", quicksort::adaptiveSort, inputArray, format);
+			reportSort("Parallel", quicksort::parallelQuickSort, inputArray, format);
+			reportSort("Samplesort", sampleSort::sort, inputArray, format);
+			reportSort("Runs", runAdaptiveSort::sort, inputArray, format);
+			
+			//reset performance counters
+			recorder.reset();
 			//Clone the array for non-destructive sorting
-			int [] quickArray = inputArray;
+			int [] quickArray = inputArray.clone();
 			System.out.println("Sorting with unmodified Quicksort:");
 			//Call quickSort
 			quickSort(quickArray, 0, quickArray.length -1);
 			//Display results
-			System.out.println("Quicksorted with " + swaps + " swaps and " + comparisons + " comparisons.");
+			System.out.println("Quicksorted with " + recorder.swaps() + " swaps and " + recorder.comparisons() + " comparisons.");
 			System.out.println("Expected O(nlgn) performance = " + (inputArray.length * (Math.log(inputArray.length) / Math.log(2))));
 			System.out.println("Expected O(n^2) performance = " + (inputArray.length * inputArray.length));
 			if (quickArray.length < 101) {
@@ -317,22 +1304,21 @@ public class quicksort {
 			//Format results for inclusion in resultsTable
 			String resultsString = String.format(format, "Stock", 
 													Integer.toString(arraySize), 
-													Integer.toString(comparisons),
-													Integer.toString(swaps),
+													Long.toString(recorder.comparisons()),
+													Long.toString(recorder.swaps()),
 													Double.toString(inputArray.length * (Math.log(inputArray.length) / Math.log(2))),
 													Integer.toString((inputArray.length * inputArray.length)));
 			//Add results to resultsTable
 			resultsTable.add(resultsString);
 			//Reset performance counters
-			swaps = 0;
-			comparisons = 0;
+			recorder.reset();
 			
 			//Call our median of 3 quicksort method
 			System.out.println("Sorting with Quicksort Median of Three:");
-			int [] quick3Array = inputArray;
+			int [] quick3Array = inputArray.clone();
 			medianQuickSort(quick3Array, 0, quick3Array.length - 1);
 			//Print results
-			System.out.println("Mo3 Quicksorted with " + swaps + " swaps and " + comparisons + " comparisons.");
+			System.out.println("Mo3 Quicksorted with " + recorder.swaps() + " swaps and " + recorder.comparisons() + " comparisons.");
 			System.out.println("Expected O(nlgn) performance = " + (inputArray.length * (Math.log(inputArray.length) / Math.log(2))));
 			System.out.println("Expected O(n^2) performance = " + (inputArray.length * inputArray.length));
 			if(quick3Array.length < 101) {
@@ -341,8 +1327,8 @@ public class quicksort {
 			
 			resultsString = String.format(format, "Mo3",
 					Integer.toString(arraySize), 
-					Integer.toString(comparisons),
-					Integer.toString(swaps),
+					Long.toString(recorder.comparisons()),
+					Long.toString(recorder.swaps()),
 					Double.toString(inputArray.length * (Math.log(inputArray.length) / Math.log(2))),
 					Integer.toString((inputArray.length * inputArray.length)));
 			resultsTable.add(resultsString);
@@ -351,6 +1337,7 @@ public class quicksort {
 			System.out.println();
 			
 		}
+    	probes.install(previous);
 	
     	
     }
@@ -0,0 +1,317 @@
+package quicksort;
+
+/**
+ * @author cyrus
+ * Class runAdaptiveSort is a sort engine for data that is already partly in order.
+ * <p>
+ * One linear scan splits the range into maximal runs, reversing strictly descending ones
+ * in place. Then:
+ * 	- a single run means the range is already sorted, so the sort costs n-1 comparisons;
+ * 	- a few long runs are merged pairwise in powersort order (Munro and Wild), which keeps
+ * 	  merges balanced for any run lengths, with TimSort-style galloping so long stretches
+ * 	  taken from one side are found by exponential search and moved with System.arraycopy;
+ * 	- once the runs average fewer than MIN_AVERAGE_RUN keys the input is not really
+ * 	  presorted, so the scan stops and the range is handed to quicksort.introSort.
+ * Merges need a buffer of at most half the range.
+ */
+public class runAdaptiveSort {
+
+	/**
+	 * Scanning stops and introsort takes over once the runs average fewer keys than this.
+	 */
+	static final int MIN_AVERAGE_RUN = 32;
+
+	/**
+	 * Consecutive wins by one side of a merge before switching to galloping.
+	 */
+	static final int MIN_GALLOP = 7;
+
+	/**
+	 * Run-adaptive sort. Same signature as the quicksort engines.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void sort(int inputArray[], int low, int high) {
+		int n = high - low + 1;
+		if (n <= quicksort.INSERTION_CUTOFF) {
+			quicksort.insertionSort(inputArray, low, high);
+			return;
+		}
+
+		//Find the runs. runEnds[r] is the exclusive end of run r.
+		int maxRuns = Math.max(2, n / MIN_AVERAGE_RUN);
+		int[] runEnds = new int[maxRuns];
+		int runs = 0;
+		int i = low;
+		while (i <= high) {
+			if (runs == maxRuns) {
+				//Too many short runs; this is not presorted input.
+				quicksort.probe.compare(i - low);
+				quicksort.introSort(inputArray, low, high);
+				return;
+			}
+			int start = i++;
+			if (i <= high && inputArray[i] < inputArray[i - 1]) {
+				while (i <= high && inputArray[i] < inputArray[i - 1]) {
+					i++;
+				}
+				reverse(inputArray, start, i - 1);
+			} else {
+				while (i <= high && inputArray[i] >= inputArray[i - 1]) {
+					i++;
+				}
+			}
+			runEnds[runs++] = i;
+		}
+		quicksort.probe.compare(n - 1);
+		if (runs == 1) {
+			return;
+		}
+
+		//Powersort: keep a stack of runs whose node powers strictly increase upwards, and
+		//merge down the stack whenever the boundary to the next run has a smaller power.
+		int[] buffer = new int[n / 2 + 1];
+		int[] stackStart = new int[Long.SIZE + 1];
+		int[] stackPower = new int[Long.SIZE + 1];
+		int top = 0;
+		int startA = low;
+		int endA = runEnds[0];
+		for (int r = 1; r < runs; r++) {
+			int endB = runEnds[r];
+			int power = nodePower(low, high + 1, startA, endA, endB);
+			while (top > 0 && stackPower[top - 1] > power) {
+				int start = stackStart[--top];
+				merge(inputArray, start, startA, endA, buffer);
+				startA = start;
+			}
+			stackStart[top] = startA;
+			stackPower[top++] = power;
+			startA = endA;
+			endA = endB;
+		}
+		while (top > 0) {
+			int start = stackStart[--top];
+			merge(inputArray, start, startA, endA, buffer);
+			startA = start;
+		}
+	}
+
+	/**
+	 * Depth of the boundary between runs [startA, startB) and [startB, endB) in the
+	 * perfectly balanced merge tree over [begin, end): the first bit where the scaled
+	 * midpoints of the two runs differ.
+	 */
+	static int nodePower(int begin, int end, int startA, int startB, int endB) {
+		long n = end - begin;
+		long midA = ((long) startA + startB - 2L * begin << 31) / n;
+		long midB = ((long) startB + endB - 2L * begin << 31) / n;
+		return Long.numberOfLeadingZeros(midA ^ midB);
+	}
+
+	private static void reverse(int inputArray[], int low, int high) {
+		while (low < high) {
+			quicksort.swap(inputArray, low++, high--);
+		}
+	}
+
+	/**
+	 * Merges the adjacent sorted runs [low, mid) and [mid, high).
+	 * Keys already in their final place at either end are skipped first, then the
+	 * shorter of the remaining runs is copied to the buffer and merged back.
+	 */
+	static void merge(int inputArray[], int low, int mid, int high, int buffer[]) {
+		if (inputArray[mid - 1] <= inputArray[mid]) {
+			quicksort.probe.compare(1);
+			return;
+		}
+		low += gallopFromLeft(inputArray, low, mid - low, inputArray[mid], true);
+		high -= gallopFromRight(inputArray, mid, high - mid, inputArray[mid - 1], false);
+		if (mid - low <= high - mid) {
+			mergeLow(inputArray, low, mid, high, buffer);
+		} else {
+			mergeHigh(inputArray, low, mid, high, buffer);
+		}
+	}
+
+	/**
+	 * Merge front to back with the left run in the buffer.
+	 */
+	private static void mergeLow(int inputArray[], int low, int mid, int high, int buffer[]) {
+		int length = mid - low;
+		System.arraycopy(inputArray, low, buffer, 0, length);
+		int i = 0;
+		int j = mid;
+		int dest = low;
+		int compared = 0;
+		int leftWins = 0;
+		int rightWins = 0;
+
+		while (i < length && j < high) {
+			compared++;
+			if (inputArray[j] < buffer[i]) {
+				inputArray[dest++] = inputArray[j++];
+				rightWins++;
+				leftWins = 0;
+			} else {
+				inputArray[dest++] = buffer[i++];
+				leftWins++;
+				rightWins = 0;
+			}
+
+			//One side keeps winning, so look for how far its streak goes.
+			while ((leftWins >= MIN_GALLOP || rightWins >= MIN_GALLOP) && i < length && j < high) {
+				int count = gallopFromLeft(buffer, i, length - i, inputArray[j], true);
+				System.arraycopy(buffer, i, inputArray, dest, count);
+				i += count;
+				dest += count;
+				if (i == length) {
+					break;
+				}
+				int countRight = gallopFromLeft(inputArray, j, high - j, buffer[i], false);
+				System.arraycopy(inputArray, j, inputArray, dest, countRight);
+				j += countRight;
+				dest += countRight;
+				if (count < MIN_GALLOP && countRight < MIN_GALLOP) {
+					leftWins = 0;
+					rightWins = 0;
+				}
+			}
+		}
+		//Whatever is left of the right run is already in place.
+		System.arraycopy(buffer, i, inputArray, dest, length - i);
+		quicksort.probe.compare(compared);
+		quicksort.probe.swap(high - low);
+	}
+
+	/**
+	 * Merge back to front with the right run in the buffer.
+	 */
+	private static void mergeHigh(int inputArray[], int low, int mid, int high, int buffer[]) {
+		int length = high - mid;
+		System.arraycopy(inputArray, mid, buffer, 0, length);
+		int i = length - 1;
+		int j = mid - 1;
+		int dest = high - 1;
+		int compared = 0;
+		int leftWins = 0;
+		int rightWins = 0;
+
+		while (i >= 0 && j >= low) {
+			compared++;
+			if (inputArray[j] > buffer[i]) {
+				inputArray[dest--] = inputArray[j--];
+				leftWins++;
+				rightWins = 0;
+			} else {
+				inputArray[dest--] = buffer[i--];
+				rightWins++;
+				leftWins = 0;
+			}
+
+			while ((leftWins >= MIN_GALLOP || rightWins >= MIN_GALLOP) && i >= 0 && j >= low) {
+				int count = gallopFromRight(inputArray, low, j - low + 1, buffer[i], false);
+				System.arraycopy(inputArray, j - count + 1, inputArray, dest - count + 1, count);
+				j -= count;
+				dest -= count;
+				if (j < low) {
+					break;
+				}
+				int countRight = gallopFromRight(buffer, 0, i + 1, inputArray[j], true);
+				System.arraycopy(buffer, i - countRight + 1, inputArray, dest - countRight + 1, countRight);
+				i -= countRight;
+				dest -= countRight;
+				if (count < MIN_GALLOP && countRight < MIN_GALLOP) {
+					leftWins = 0;
+					rightWins = 0;
+				}
+			}
+		}
+		//Whatever is left of the left run is already in place.
+		System.arraycopy(buffer, 0, inputArray, low, i + 1);
+		quicksort.probe.compare(compared);
+		quicksort.probe.swap(high - low);
+	}
+
+	/**
+	 * Exponential then binary search from the left end of a sorted range.
+	 * @param inputArray array containing the range
+	 * @param base start of the range
+	 * @param length length of the range
+	 * @param key key to search for
+	 * @param inclusive whether keys equal to key are counted
+	 * @return how many leading keys are < key, or <= key if inclusive
+	 */
+	static int gallopFromLeft(int inputArray[], int base, int length, int key, boolean inclusive) {
+		int compared = 0;
+		int lastOffset = 0;
+		int offset = 1;
+		while (offset <= length) {
+			int value = inputArray[base + offset - 1];
+			compared++;
+			if (inclusive ? value > key : value >= key) {
+				break;
+			}
+			lastOffset = offset;
+			offset = offset * 2 + 1;
+			if (offset <= 0) {
+				offset = length + 1;
+			}
+		}
+		int lo = lastOffset;
+		int hi = Math.min(offset, length);
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int value = inputArray[base + mid];
+			compared++;
+			if (inclusive ? value <= key : value < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		quicksort.probe.compare(compared);
+		return lo;
+	}
+
+	/**
+	 * Exponential then binary search from the right end of a sorted range.
+	 * @param inputArray array containing the range
+	 * @param base start of the range
+	 * @param length length of the range
+	 * @param key key to search for
+	 * @param inclusive whether keys equal to key are counted
+	 * @return how many trailing keys are > key, or >= key if inclusive
+	 */
+	static int gallopFromRight(int inputArray[], int base, int length, int key, boolean inclusive) {
+		int compared = 0;
+		int lastOffset = 0;
+		int offset = 1;
+		while (offset <= length) {
+			int value = inputArray[base + length - offset];
+			compared++;
+			if (inclusive ? value < key : value <= key) {
+				break;
+			}
+			lastOffset = offset;
+			offset = offset * 2 + 1;
+			if (offset <= 0) {
+				offset = length + 1;
+			}
+		}
+		int lo = lastOffset;
+		int hi = Math.min(offset, length);
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int value = inputArray[base + length - 1 - mid];
+			compared++;
+			if (inclusive ? value >= key : value > key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		quicksort.probe.compare(compared);
+		return lo;
+	}
+}
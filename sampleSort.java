@@ -0,0 +1,172 @@
+package quicksort;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * @author cyrus
+ * Class sampleSort implements a parallel samplesort for very large int arrays.
+ * <p>
+ * Recursive parallel quicksort does its top-level partition on a single core. Samplesort
+ * avoids that by choosing all of its splitters up front:
+ * 	1. draw an oversampled random sample and pick k-1 evenly spaced splitters from it;
+ * 	2. split the input into chunks and, in parallel, count how many keys of each chunk
+ * 	   fall into each of the k buckets;
+ * 	3. prefix-sum the counts so every (chunk, bucket) pair gets its own slice of the output;
+ * 	4. scatter the keys into the output in parallel, then sort each bucket independently
+ * 	   with one of the sequential quicksort engines and copy it back.
+ * Every phase after sampling runs on all cores.
+ */
+public class sampleSort {
+
+	/**
+	 * Ranges smaller than this are sorted sequentially.
+	 */
+	static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Sample keys drawn per bucket. More oversampling gives more even buckets.
+	 */
+	static final int OVERSAMPLE = 32;
+
+	/**
+	 * Buckets per worker thread, so stragglers can be balanced by work stealing.
+	 */
+	static final int BUCKETS_PER_THREAD = 8;
+
+	/**
+	 * Samplesort on the common pool, sorting buckets with introsort.
+	 * Same signature as the quicksort engines.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void sort(int inputArray[], int low, int high) {
+		sort(inputArray, low, high, quicksort::introSort, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Samplesort with a selectable sequential engine for the buckets.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param bucketEngine sequential engine used for each bucket
+	 * @param pool the pool to run on
+	 */
+	public static void sort(int inputArray[], int low, int high, quicksort.sortEngine bucketEngine, ForkJoinPool pool) {
+		int n = high - low + 1;
+		if (n < SEQUENTIAL_THRESHOLD || pool.getParallelism() < 2) {
+			bucketEngine.sort(inputArray, low, high);
+			return;
+		}
+
+		pool.submit(() -> parallelSort(inputArray, low, n, bucketEngine, pool.getParallelism())).join();
+	}
+
+	/**
+	 * The four samplesort phases. Runs inside the pool so parallel streams use it.
+	 */
+	private static void parallelSort(int inputArray[], int low, int n, quicksort.sortEngine bucketEngine, int threads) {
+		int numBuckets = Math.max(2, Math.min(threads * BUCKETS_PER_THREAD, n / (SEQUENTIAL_THRESHOLD / 8)));
+		int[] splitters = chooseSplitters(inputArray, low, n, numBuckets);
+		numBuckets = splitters.length + 1;
+
+		//Chunks for the classification and scatter phases.
+		int numChunks = Math.min(threads * 4, Math.max(1, n / 4096));
+		long chunkSize = (n + (long) numChunks - 1) / numChunks;
+
+		//Phase 2: count bucket sizes per chunk.
+		int buckets = numBuckets;
+		int[][] counts = new int[numChunks][];
+		IntStream.range(0, numChunks).parallel().forEach(c -> {
+			int[] chunkCounts = new int[buckets];
+			int from = low + (int) (c * chunkSize);
+			int to = low + (int) Math.min(n, (c + 1) * chunkSize);
+			for (int i = from; i < to; i++) {
+				chunkCounts[bucketOf(splitters, inputArray[i])]++;
+			}
+			counts[c] = chunkCounts;
+		});
+
+		//Phase 3: prefix sums, bucket-major, so each bucket is contiguous in the output
+		//and each chunk has its own slice of it.
+		int[][] offsets = new int[numChunks][numBuckets];
+		int[] bucketStart = new int[numBuckets + 1];
+		int sum = 0;
+		for (int b = 0; b < numBuckets; b++) {
+			bucketStart[b] = sum;
+			for (int c = 0; c < numChunks; c++) {
+				offsets[c][b] = sum;
+				sum += counts[c][b];
+			}
+		}
+		bucketStart[numBuckets] = sum;
+
+		//Phase 4a: scatter into the output.
+		int[] output = new int[n];
+		IntStream.range(0, numChunks).parallel().forEach(c -> {
+			int[] next = offsets[c];
+			int from = low + (int) (c * chunkSize);
+			int to = low + (int) Math.min(n, (c + 1) * chunkSize);
+			for (int i = from; i < to; i++) {
+				int value = inputArray[i];
+				output[next[bucketOf(splitters, value)]++] = value;
+			}
+		});
+
+		//Phase 4b: sort each bucket on its own and copy it back.
+		IntStream.range(0, numBuckets).parallel().forEach(b -> {
+			int from = bucketStart[b];
+			int to = bucketStart[b + 1];
+			if (to - from > 1) {
+				bucketEngine.sort(output, from, to - 1);
+			}
+			System.arraycopy(output, from, inputArray, low + from, to - from);
+		});
+	}
+
+	/**
+	 * Draws numBuckets * OVERSAMPLE random keys, sorts them, and keeps every
+	 * OVERSAMPLE-th one. Duplicate splitters are dropped, so heavily repeated keys
+	 * end up in fewer, larger buckets instead of empty ones.
+	 * @return ascending, distinct splitters
+	 */
+	static int[] chooseSplitters(int inputArray[], int low, int n, int numBuckets) {
+		Random rand = new Random(n * 31L + numBuckets);
+		int[] sample = new int[numBuckets * OVERSAMPLE];
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = inputArray[low + rand.nextInt(n)];
+		}
+		Arrays.sort(sample);
+
+		int[] splitters = new int[numBuckets - 1];
+		int count = 0;
+		for (int i = 1; i < numBuckets; i++) {
+			int s = sample[i * OVERSAMPLE - 1];
+			if (count == 0 || splitters[count - 1] != s) {
+				splitters[count++] = s;
+			}
+		}
+		return Arrays.copyOf(splitters, count);
+	}
+
+	/**
+	 * Binary search for the bucket of a key: the number of splitters strictly less
+	 * than the key, so bucket b holds splitters[b-1] < key <= splitters[b].
+	 */
+	static int bucketOf(int splitters[], int key) {
+		int lo = 0;
+		int hi = splitters.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (splitters[mid] < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,281 @@
+package assignmentOne;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import assignmentOne.assignmentOne.Pair;
+import assignmentOne.assignmentOne.Point;
+
+/**
+ * @author cyrus
+ * Class shardedClosestPair runs the divide-and-conquer closest pair algorithm across
+ * several worker processes so that no single JVM heap has to hold the whole problem.
+ * <p>
+ * The coordinator sorts the points by x and cuts them into vertical slabs of equal size.
+ * Each slab is shipped to a worker as packed binary coordinates. The worker runs
+ * assignmentOne.dncDistance on its slab and returns its local closest pair plus the
+ * "boundary strip": every point closer to one of the slab's dividing verticals than its
+ * local closest distance. Any pair that crosses a dividing vertical and beats the best
+ * local result must have both points in the union of the boundary strips, so the
+ * coordinator only has to solve the closest pair over that union.
+ * <p>
+ * Workers are launched locally and talk to the coordinator either over their stdin/stdout
+ * pipes ("process" mode) or over a loopback socket ("socket" mode). Both use the same
+ * framing, so a remote worker only needs the socket address.
+ * <p>
+ * Request:  int MAGIC, int hasLeft, int leftX, int hasRight, int rightX, int n, n * (int x, int y)
+ * Response: int MAGIC, long bestDist2 (-1 if n < 2), int x1, int y1, int x2, int y2,
+ * 			int m, m * (int x, int y)
+ */
+class shardedClosestPair {
+
+	static final int MAGIC = 0x53484350;	//"SHCP"
+
+	/**
+	 * Result returned by one worker.
+	 */
+	static class shardResult {
+		long bestDist2 = -1;
+		Point p1;
+		Point p2;
+		List<Point> strip = new ArrayList<Point>();
+	}
+
+	/**
+	 * Computes the closest Pair among pointArray using numShards worker processes.
+	 * @param pointArray list of Points to be evaluated.
+	 * @param numShards number of vertical slabs/worker processes.
+	 * @param useSocket talk to workers over a loopback socket if true, over pipes otherwise.
+	 * @return the closest Pair.
+	 * @throws IOException if a worker cannot be launched or the protocol fails.
+	 */
+	public static Pair closestPair(List<Point> pointArray, int numShards, boolean useSocket) throws IOException {
+		if (pointArray.size() < 2) {
+			return new Pair();
+		}
+
+		//Never hand a worker fewer than 2 points.
+		numShards = Math.max(1, Math.min(numShards, pointArray.size() / 2));
+
+		//Sort by x and cut into slabs of equal size.
+		List<Point> byX = assignmentOne.sortX(pointArray);
+		int[] slabStart = new int[numShards + 1];
+		for (int s = 0; s <= numShards; s++) {
+			slabStart[s] = (int) ((long) byX.size() * s / numShards);
+		}
+
+		//Launch workers and connect to them.
+		List<Process> workers = new ArrayList<Process>();
+		List<Socket> sockets = new ArrayList<Socket>();
+		DataOutputStream[] outs = new DataOutputStream[numShards];
+		DataInputStream[] ins = new DataInputStream[numShards];
+		ServerSocket server = null;
+		try {
+			if (useSocket) {
+				server = new ServerSocket(0, numShards, InetAddress.getLoopbackAddress());
+			}
+			for (int s = 0; s < numShards; s++) {
+				workers.add(launchWorker(server));
+			}
+			for (int s = 0; s < numShards; s++) {
+				InputStream in;
+				OutputStream out;
+				if (useSocket) {
+					Socket socket = server.accept();
+					sockets.add(socket);
+					in = socket.getInputStream();
+					out = socket.getOutputStream();
+				} else {
+					in = workers.get(s).getInputStream();
+					out = workers.get(s).getOutputStream();
+				}
+				ins[s] = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+				outs[s] = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+			}
+
+			//Ship every slab first so the workers compute concurrently...
+			for (int s = 0; s < numShards; s++) {
+				boolean hasLeft = s > 0;
+				boolean hasRight = s < numShards - 1;
+				int leftX = byX.get(slabStart[s]).x;
+				int rightX = hasRight ? byX.get(slabStart[s + 1]).x : 0;
+				writeRequest(outs[s], byX.subList(slabStart[s], slabStart[s + 1]), hasLeft, leftX, hasRight, rightX);
+			}
+
+			//...then collect the results.
+			shardResult best = null;
+			List<Point> candidates = new ArrayList<Point>();
+			for (int s = 0; s < numShards; s++) {
+				shardResult r = readResult(ins[s]);
+				if (r.bestDist2 >= 0 && (best == null || r.bestDist2 < best.bestDist2)) {
+					best = r;
+				}
+				candidates.addAll(r.strip);
+			}
+
+			//Resolve the pairs that cross slab boundaries.
+			Pair closest = new Pair(best.p1, best.p2);
+			if (candidates.size() >= 2) {
+				Pair cross = assignmentOne.dncDistance(candidates);
+				if (cross.distance < closest.distance) {
+					closest = cross;
+				}
+			}
+			return closest;
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			if (server != null) {
+				server.close();
+			}
+			for (Process p : workers) {
+				p.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Launches a worker JVM on the current classpath.
+	 * @param server coordinator socket to connect back to, or null for pipe mode.
+	 * @return the worker process.
+	 */
+	static Process launchWorker(ServerSocket server) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp",
+				System.getProperty("java.class.path"), shardedClosestPair.class.getName(), "worker"));
+		if (server != null) {
+			command.add(server.getInetAddress().getHostAddress());
+			command.add(Integer.toString(server.getLocalPort()));
+		}
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+		if (server != null) {
+			pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		}
+		return pb.start();
+	}
+
+	static void writeRequest(DataOutputStream out, List<Point> slab, boolean hasLeft, int leftX,
+			boolean hasRight, int rightX) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(hasLeft ? 1 : 0);
+		out.writeInt(leftX);
+		out.writeInt(hasRight ? 1 : 0);
+		out.writeInt(rightX);
+		out.writeInt(slab.size());
+		for (Point p : slab) {
+			out.writeInt(p.x);
+			out.writeInt(p.y);
+		}
+		out.flush();
+	}
+
+	static shardResult readResult(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Bad response from shard worker.");
+		}
+		shardResult r = new shardResult();
+		r.bestDist2 = in.readLong();
+		r.p1 = new Point(in.readInt(), in.readInt());
+		r.p2 = new Point(in.readInt(), in.readInt());
+		int m = in.readInt();
+		for (int i = 0; i < m; i++) {
+			r.strip.add(new Point(in.readInt(), in.readInt()));
+		}
+		return r;
+	}
+
+	/**
+	 * Worker side: reads one slab, solves it and writes back the result.
+	 */
+	static void serve(DataInputStream in, DataOutputStream out) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Bad request from coordinator.");
+		}
+		boolean hasLeft = in.readInt() != 0;
+		long leftX = in.readInt();
+		boolean hasRight = in.readInt() != 0;
+		long rightX = in.readInt();
+		int n = in.readInt();
+		List<Point> slab = new ArrayList<Point>(n);
+		for (int i = 0; i < n; i++) {
+			slab.add(new Point(in.readInt(), in.readInt()));
+		}
+
+		//Local closest pair, kept as a squared integer distance to avoid rounding.
+		long bestDist2 = -1;
+		Pair local = new Pair(new Point(0, 0), new Point(0, 0));
+		if (n >= 2) {
+			local = assignmentOne.dncDistance(slab);
+			long dx = local.p1.x - local.p2.x;
+			long dy = local.p1.y - local.p2.y;
+			bestDist2 = dx * dx + dy * dy;
+		}
+
+		//Boundary strip: points closer to a dividing vertical than the local best.
+		List<Point> strip = new ArrayList<Point>();
+		for (Point p : slab) {
+			long dl = p.x - leftX;
+			long dr = rightX - p.x;
+			if ((hasLeft && (bestDist2 < 0 || dl * dl < bestDist2))
+					|| (hasRight && (bestDist2 < 0 || dr * dr < bestDist2))) {
+				strip.add(p);
+			}
+		}
+
+		out.writeInt(MAGIC);
+		out.writeLong(bestDist2);
+		out.writeInt(local.p1.x);
+		out.writeInt(local.p1.y);
+		out.writeInt(local.p2.x);
+		out.writeInt(local.p2.y);
+		out.writeInt(strip.size());
+		for (Point p : strip) {
+			out.writeInt(p.x);
+			out.writeInt(p.y);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Main function runs a worker, or runs the coordinator on random points.
+	 * @param args 	"worker [host port]" - serve one slab over stdin/stdout or the given socket.
+	 * 				"<numPoints> <numShards> [process|socket]" - coordinator demo, checked against dncDistance.
+	 */
+	public static void main(String[] args) {
+		try {
+			if (args.length > 0 && args[0].equals("worker")) {
+				if (args.length > 2) {
+					try (Socket socket = new Socket(args[1], Integer.parseInt(args[2]))) {
+						serve(new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16)),
+								new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16)));
+					}
+				} else {
+					serve(new DataInputStream(new BufferedInputStream(System.in, 1 << 16)),
+							new DataOutputStream(new BufferedOutputStream(System.out, 1 << 16)));
+				}
+				return;
+			}
+
+			if (args.length < 2) {
+				System.out.println("Usage: <numPoints> <numShards> [process|socket]  or  worker [host port]");
+				System.exit(0);
+			}
+			double numPoints = Double.parseDouble(args[0]);
+			int numShards = Integer.parseInt(args[1]);
+			boolean useSocket = args.length > 2 && args[2].equals("socket");
+
+			List<Point> pointArray = assignmentOne.generateRandomPoints(numPoints);
+			long start = System.nanoTime();
+			Pair sharded = closestPair(pointArray, numShards, useSocket);
+			System.out.println("Sharded closest pair: " + sharded + " " + sharded.distance
+					+ " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+			Pair dnc = assignmentOne.dncDistance(pointArray);
+			System.out.println("Single-process closest pair: " + dnc + " " + dnc.distance);
+		} catch (IOException x) {
+			System.err.format("IOException: %s%n", x);
+		}
+	}
+}
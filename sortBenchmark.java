@@ -0,0 +1,269 @@
+package quicksort;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author cyrus
+ * Class sortBenchmark is a microbenchmark harness for the sort engines.
+ * <p>
+ * For every (engine, size, distribution) triple the harness:
+ * 	1. generates one master input from a fixed seed, so every engine sees the same keys;
+ * 	2. copies the master into a work array before every invocation, outside the timed
+ * 	   region, so no engine ever sorts data an earlier run already sorted;
+ * 	3. runs warmup iterations to let the JIT compile the engine, then measurement
+ * 	   iterations of at least ITERATION_NANOS each;
+ * 	4. reports throughput (sorts per second, mean and standard deviation over iterations),
+ * 	   average time per sort, and bytes allocated per sort across all threads.
+ * Arrays.sort and Arrays.parallelSort are included as baselines. Sorted results are
+ * checked against Arrays.sort once per triple and folded into a sink so the JIT cannot
+ * drop the work.
+ */
+public class sortBenchmark {
+
+	/**
+	 * Default warmup and measurement iteration counts.
+	 */
+	static final int WARMUP_ITERATIONS = 3;
+	static final int MEASUREMENT_ITERATIONS = 5;
+
+	/**
+	 * Minimum length of one iteration, in nanoseconds.
+	 */
+	static final long ITERATION_NANOS = 200_000_000L;
+
+	/**
+	 * Seed used for every master input.
+	 */
+	static final long SEED = 42;
+
+	static final int[] DEFAULT_SIZES = {1_000, 100_000, 1_000_000};
+	static final String[] DEFAULT_DISTRIBUTIONS = {"random", "sorted", "reversed", "fewUnique"};
+
+	//Folds in one key of every sorted array so the sorts are never dead code.
+	static volatile int sink;
+
+	/**
+	 * @return the benchmarked engines by name, in table order.
+	 */
+	static Map<String, quicksort.sortEngine> engines() {
+		Map<String, quicksort.sortEngine> engines = new LinkedHashMap<String, quicksort.sortEngine>();
+		engines.put("Arrays.sort", (a, low, high) -> Arrays.sort(a, low, high + 1));
+		engines.put("Arrays.parallelSort", (a, low, high) -> Arrays.parallelSort(a, low, high + 1));
+		engines.put("Intro", quicksort::introSort);
+		engines.put("Mo3", quicksort::medianQuickSort);
+		engines.put("Dual-Pivot", quicksort::dualPivotQuickSort);
+		engines.put("Iterative", quicksort::iterativeQuickSort);
+		engines.put("Block", quicksort::blockQuickSort);
+		engines.put("Radix", quicksort::radixSort);
+		engines.put("Adaptive", quicksort::adaptiveSort);
+		engines.put("Parallel", quicksort::parallelQuickSort);
+		engines.put("Samplesort", sampleSort::sort);
+		engines.put("Runs", runAdaptiveSort::sort);
+		return engines;
+	}
+
+	/**
+	 * Result of benchmarking one (engine, size, distribution) triple.
+	 */
+	static class result {
+		String engine;
+		int size;
+		String distribution;
+		double opsPerSecond;
+		double opsError;
+		double nanosPerOp;
+		double bytesPerOp;
+
+		@Override
+		public String toString() {
+			return String.format(FORMAT, engine, Integer.toString(size), distribution,
+					String.format("%.2f", opsPerSecond), String.format("+/- %.2f", opsError),
+					String.format("%.0f", nanosPerOp), bytesPerOp < 0 ? "n/a" : String.format("%.0f", bytesPerOp));
+		}
+	}
+
+	static final String FORMAT = "|%1$-20s|%2$-10s|%3$-10s|%4$-14s|%5$-12s|%6$-14s|%7$-12s";
+
+	/**
+	 * Benchmarks one engine on one input.
+	 * @param name engine name for the result
+	 * @param engine engine to run
+	 * @param master unsorted input. Not modified.
+	 * @param distribution distribution name for the result
+	 * @param warmup number of warmup iterations
+	 * @param iterations number of measurement iterations
+	 * @return throughput, latency and allocation of the engine
+	 */
+	static result run(String name, quicksort.sortEngine engine, int master[], String distribution, int warmup, int iterations) {
+		int n = master.length;
+		int[] work = new int[n];
+
+		//Check the engine once against the library sort.
+		int[] expected = master.clone();
+		Arrays.sort(expected);
+		System.arraycopy(master, 0, work, 0, n);
+		engine.sort(work, 0, n - 1);
+		if (!Arrays.equals(expected, work)) {
+			throw new IllegalStateException(name + " did not sort " + distribution + " input of size " + n);
+		}
+
+		for (int i = 0; i < warmup; i++) {
+			iteration(engine, master, work);
+		}
+
+		double[] throughput = new double[iterations];
+		long totalOps = 0;
+		long totalNanos = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] measured = iteration(engine, master, work);
+			throughput[i] = measured[0] * 1e9 / measured[1];
+			totalOps += measured[0];
+			totalNanos += measured[1];
+			totalBytes = measured[2] < 0 || totalBytes < 0 ? -1 : totalBytes + measured[2];
+		}
+
+		result r = new result();
+		r.engine = name;
+		r.size = n;
+		r.distribution = distribution;
+		double mean = 0;
+		for (double t : throughput) {
+			mean += t;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double t : throughput) {
+			variance += (t - mean) * (t - mean);
+		}
+		r.opsPerSecond = mean;
+		r.opsError = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		r.nanosPerOp = (double) totalNanos / totalOps;
+		r.bytesPerOp = totalBytes < 0 ? -1 : (double) totalBytes / totalOps;
+		return r;
+	}
+
+	/**
+	 * One iteration: fresh copy, timed sort, repeated until ITERATION_NANOS of wall time pass.
+	 * The copy is outside the timed and allocation-measured regions.
+	 * @return {operations, nanoseconds spent sorting, bytes allocated or -1 if unsupported}
+	 */
+	private static long[] iteration(quicksort.sortEngine engine, int master[], int work[]) {
+		int n = master.length;
+		long ops = 0;
+		long sortNanos = 0;
+		long bytes = 0;
+		long overhead = allocationOverhead();
+		long deadline = System.nanoTime() + ITERATION_NANOS;
+		do {
+			System.arraycopy(master, 0, work, 0, n);
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			engine.sort(work, 0, n - 1);
+			long end = System.nanoTime();
+			long after = allocatedBytes();
+			sortNanos += end - start;
+			bytes = allocated < 0 || bytes < 0 ? -1 : bytes + Math.max(0, after - allocated - overhead);
+			sink ^= work[n >>> 1];
+			ops++;
+		} while (System.nanoTime() < deadline);
+		return new long[] {ops, sortNanos, bytes};
+	}
+
+	/**
+	 * allocatedBytes itself allocates a few arrays. Measures that cost so it can be
+	 * subtracted from every sample.
+	 * @return smallest allocation seen between two back-to-back calls
+	 */
+	static long allocationOverhead() {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 16; i++) {
+			long before = allocatedBytes();
+			long after = allocatedBytes();
+			overhead = Math.min(overhead, after - before);
+		}
+		return Math.max(0, overhead);
+	}
+
+	/**
+	 * Total bytes allocated so far by all live threads, including fork/join workers.
+	 * @return byte count, or -1 if the JVM cannot measure thread allocation.
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * main method runs the benchmark matrix and writes it to "benchmark.txt".
+	 * @param args	optional, in order: comma-separated sizes, comma-separated sortInputs distributions,
+	 * 				comma-separated engine names, warmup iterations, measurement iterations.
+	 * 				"all" selects DEFAULT_DISTRIBUTIONS or every engine; other shapes such as
+	 * 				nearlySorted and zipfian run only when named. An engine that overflows
+	 * 				the stack on an input is reported as "overflow" for that cell.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 0 && !args[0].equals("all")) {
+			sizes = Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray();
+		}
+		String[] distributions = DEFAULT_DISTRIBUTIONS;
+		if (args.length > 1 && !args[1].equals("all")) {
+			distributions = args[1].split(",");
+		}
+		Map<String, quicksort.sortEngine> engines = engines();
+		if (args.length > 2 && !args[2].equals("all")) {
+			Map<String, quicksort.sortEngine> selected = new LinkedHashMap<String, quicksort.sortEngine>();
+			for (String name : args[2].split(",")) {
+				if (!engines.containsKey(name)) {
+					System.out.println("Unknown engine " + name + ". Engines: " + engines.keySet());
+					return;
+				}
+				selected.put(name, engines.get(name));
+			}
+			engines = selected;
+		}
+		int warmup = args.length > 3 ? Integer.parseInt(args[3]) : WARMUP_ITERATIONS;
+		int iterations = args.length > 4 ? Integer.parseInt(args[4]) : MEASUREMENT_ITERATIONS;
+
+		List<String> table = new ArrayList<String>();
+		table.add(String.format(FORMAT, "Engine", "Size", "Input", "Ops/s", "Error", "ns/op", "B/op"));
+		System.out.println(table.get(0));
+
+		for (int size : sizes) {
+			for (String distribution : distributions) {
+				int[] master = sortInputs.generate(distribution, size, SEED);
+				for (Map.Entry<String, quicksort.sortEngine> e : engines.entrySet()) {
+					String row;
+					try {
+						row = run(e.getKey(), e.getValue(), master, distribution, warmup, iterations).toString();
+					} catch (StackOverflowError x) {
+						//Recursion too deep on this input: keep the cell, so the defect stays visible.
+						row = String.format(FORMAT, e.getKey(), Integer.toString(size), distribution, "overflow", "", "", "");
+					}
+					System.out.println(row);
+					table.add(row);
+				}
+			}
+		}
+		quicksort.writeResults(table, "benchmark.txt");
+	}
+}
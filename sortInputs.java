@@ -0,0 +1,458 @@
+package quicksort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * @author cyrus
+ * Class sortInputs generates input distributions for testing and benchmarking the sort engines.
+ * <p>
+ * Besides uniform random and in-order data it covers the shapes that trip up real sorts:
+ * descending, sawtooth, organ-pipe, nearly sorted, few unique keys, Zipfian-skewed keys,
+ * and McIlroy's "antiquicksort" adversary for a chosen pivot rule.
+ * <p>
+ * Generation is seedable and parallel. Random generators split the output into fixed
+ * CHUNK-sized pieces, each with its own SplittableRandom seeded from the master seed, so
+ * the same seed gives the same array regardless of how many threads fill it. Arrays can
+ * be as large as the JVM allows (about 2^31 - 8 ints).
+ */
+public class sortInputs {
+
+	/**
+	 * Number of elements filled by one random stream.
+	 */
+	static final int CHUNK = 1 << 16;
+
+	/**
+	 * Names accepted by generate.
+	 */
+	static final String[] DISTRIBUTIONS = {"random", "sorted", "reversed", "sawtooth", "organPipe",
+			"nearlySorted", "fewUnique", "zipfian", "antiquicksort"};
+
+	/**
+	 * Fills one chunk [from, to) from its own random stream.
+	 */
+	interface chunkFiller {
+		void fill(int a[], int from, int to, SplittableRandom rd);
+	}
+
+	/**
+	 * Fills a new array chunk by chunk, in parallel.
+	 * @param n array length
+	 * @param seed master seed
+	 * @param filler fills each chunk
+	 * @return the filled array
+	 */
+	static int[] fillRandom(int n, long seed, chunkFiller filler) {
+		int[] a = new int[n];
+		int chunks = (int) ((n + (long) CHUNK - 1) / CHUNK);
+
+		//Draw the chunk seeds sequentially so the output does not depend on scheduling.
+		SplittableRandom master = new SplittableRandom(seed);
+		long[] seeds = new long[chunks];
+		for (int c = 0; c < chunks; c++) {
+			seeds[c] = master.nextLong();
+		}
+
+		IntStream.range(0, chunks).parallel().forEach(c -> {
+			int from = c * CHUNK;
+			int to = (int) Math.min(n, (long) from + CHUNK);
+			filler.fill(a, from, to, new SplittableRandom(seeds[c]));
+		});
+		return a;
+	}
+
+	/**
+	 * @param n array length
+	 * @param seed random seed
+	 * @return n uniformly random ints
+	 */
+	public static int[] random(int n, long seed) {
+		return fillRandom(n, seed, (a, from, to, rd) -> {
+			for (int i = from; i < to; i++) {
+				a[i] = rd.nextInt();
+			}
+		});
+	}
+
+	/**
+	 * @param n array length
+	 * @return 0, 1, ..., n-1
+	 */
+	public static int[] ascending(int n) {
+		int[] a = new int[n];
+		Arrays.parallelSetAll(a, i -> i);
+		return a;
+	}
+
+	/**
+	 * @param n array length
+	 * @return n-1, n-2, ..., 0
+	 */
+	public static int[] descending(int n) {
+		int[] a = new int[n];
+		Arrays.parallelSetAll(a, i -> n - 1 - i);
+		return a;
+	}
+
+	/**
+	 * Repeated ascending runs: 0, 1, ..., period-1, 0, 1, ...
+	 * @param n array length
+	 * @param period length of each run
+	 * @return the sawtooth
+	 */
+	public static int[] sawtooth(int n, int period) {
+		int[] a = new int[n];
+		Arrays.parallelSetAll(a, i -> i % period);
+		return a;
+	}
+
+	/**
+	 * Ascending to the middle, then descending: 0, 1, ..., m, ..., 1, 0.
+	 * @param n array length
+	 * @return the organ pipe
+	 */
+	public static int[] organPipe(int n) {
+		int[] a = new int[n];
+		Arrays.parallelSetAll(a, i -> Math.min(i, n - 1 - i));
+		return a;
+	}
+
+	/**
+	 * Ascending order disturbed by k swaps of random pairs.
+	 * @param n array length
+	 * @param swaps number of random swaps
+	 * @param seed random seed
+	 * @return the nearly sorted array
+	 */
+	public static int[] nearlySorted(int n, int swaps, long seed) {
+		int[] a = ascending(n);
+		if (n < 2) {
+			return a;
+		}
+		SplittableRandom rd = new SplittableRandom(seed);
+		for (int s = 0; s < swaps; s++) {
+			int i = rd.nextInt(n);
+			int j = rd.nextInt(n);
+			int tmp = a[i];
+			a[i] = a[j];
+			a[j] = tmp;
+		}
+		return a;
+	}
+
+	/**
+	 * @param n array length
+	 * @param distinct number of distinct keys
+	 * @param seed random seed
+	 * @return n keys drawn uniformly from 0 to distinct-1
+	 */
+	public static int[] fewUnique(int n, int distinct, long seed) {
+		return fillRandom(n, seed, (a, from, to, rd) -> {
+			for (int i = from; i < to; i++) {
+				a[i] = rd.nextInt(distinct);
+			}
+		});
+	}
+
+	/**
+	 * Keys 0 to distinct-1 where key k-1 appears with probability proportional to 1/k^exponent,
+	 * so a handful of hot keys dominate, as with request ids or word counts.
+	 * @param n array length
+	 * @param distinct number of possible keys
+	 * @param exponent skew; 0 is uniform, around 1 is typical of real data
+	 * @param seed random seed
+	 * @return the Zipf-distributed keys
+	 */
+	public static int[] zipfian(int n, int distinct, double exponent, long seed) {
+		zipf sampler = new zipf(distinct, exponent);
+		return fillRandom(n, seed, (a, from, to, rd) -> {
+			for (int i = from; i < to; i++) {
+				a[i] = sampler.sample(rd) - 1;
+			}
+		});
+	}
+
+	/**
+	 * Zipf sampler using Hormann and Derflinger's rejection-inversion method, which
+	 * needs O(1) memory and time per sample for any number of keys.
+	 */
+	static class zipf {
+		private final int n;
+		private final double exponent;
+		private final double hIntegralX1;
+		private final double hIntegralN;
+		private final double s;
+
+		zipf(int n, double exponent) {
+			this.n = n;
+			this.exponent = exponent;
+			hIntegralX1 = hIntegral(1.5) - 1.0;
+			hIntegralN = hIntegral(n + 0.5);
+			s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+		}
+
+		/**
+		 * @return a rank from 1 to n
+		 */
+		int sample(SplittableRandom rd) {
+			while (true) {
+				double u = hIntegralN + rd.nextDouble() * (hIntegralX1 - hIntegralN);
+				double x = hIntegralInverse(u);
+				int k = (int) (x + 0.5);
+				if (k < 1) {
+					k = 1;
+				} else if (k > n) {
+					k = n;
+				}
+				if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+					return k;
+				}
+			}
+		}
+
+		private double h(double x) {
+			return Math.exp(-exponent * Math.log(x));
+		}
+
+		private double hIntegral(double x) {
+			double logX = Math.log(x);
+			return helper2((1.0 - exponent) * logX) * logX;
+		}
+
+		private double hIntegralInverse(double x) {
+			double t = x * (1.0 - exponent);
+			if (t < -1.0) {
+				t = -1.0;
+			}
+			return Math.exp(helper1(t) * x);
+		}
+
+		//log(1+x)/x, accurate near 0
+		private static double helper1(double x) {
+			if (Math.abs(x) > 1e-8) {
+				return Math.log1p(x) / x;
+			}
+			return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+		}
+
+		//(exp(x)-1)/x, accurate near 0
+		private static double helper2(double x) {
+			if (Math.abs(x) > 1e-8) {
+				return Math.expm1(x) / x;
+			}
+			return 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+		}
+	}
+
+	/**
+	 * McIlroy's antiquicksort adversary ("A Killer Adversary for Quicksort").
+	 * <p>
+	 * Runs a model of quicksort.quickSort / medianQuickSort with the given pivot rule on
+	 * values that are decided lazily. Every item starts as "gas", which compares greater
+	 * than anything solid. When two gas items meet, the one most likely to be the pivot is
+	 * frozen to the next solid value, so every pivot ends up as small as possible. The
+	 * frozen values are returned in their original positions; fed to the real engine with
+	 * the same rule they make it take the identical, quadratic path.
+	 * <p>
+	 * The model does the quadratic work itself, so this is practical up to about 10^5 items.
+	 * @param n array length
+	 * @param rule "last" (quickSort), "median3", "ninther", or "adaptive" (medianQuickSort)
+	 * @return the adversarial input
+	 */
+	public static int[] antiQuicksort(int n, String rule) {
+		adversary adv = new adversary(n);
+		int[] items = new int[n];
+		for (int i = 0; i < n; i++) {
+			items[i] = i;
+		}
+
+		//Same order as the recursive engines: left range first, then right.
+		int[] stack = new int[2 * n + 2];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = n - 1;
+		while (top > 0) {
+			int high = stack[--top];
+			int low = stack[--top];
+			if (low >= high) {
+				continue;
+			}
+
+			int pivotIndex;
+			switch (rule) {
+				case "last":
+					pivotIndex = high;
+					break;
+				case "median3":
+					pivotIndex = adv.medianOfThree(items, low, (low + high) >>> 1, high);
+					break;
+				case "ninther":
+					pivotIndex = adv.ninther(items, low, high);
+					break;
+				case "adaptive":
+					pivotIndex = (high - low + 1 > quicksort.NINTHER_THRESHOLD) ? adv.ninther(items, low, high)
+							: adv.medianOfThree(items, low, (low + high) >>> 1, high);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown pivot rule: " + rule);
+			}
+			quicksort.swap(items, pivotIndex, high);
+
+			//Stock CLRS partition, as in quicksort.partition.
+			int pivot = items[high];
+			int i = low - 1;
+			for (int j = low; j < high; j++) {
+				if (adv.compare(items[j], pivot) <= 0) {
+					i++;
+					quicksort.swap(items, i, j);
+				}
+			}
+			quicksort.swap(items, i + 1, high);
+
+			stack[top++] = i + 2;
+			stack[top++] = high;
+			stack[top++] = low;
+			stack[top++] = i;
+		}
+
+		//Anything never compared against another gas item is still gas; give it a value too.
+		for (int i = 0; i < n; i++) {
+			if (adv.values[i] == adv.gas) {
+				adv.values[i] = adv.solid++;
+			}
+		}
+		return adv.values;
+	}
+
+	/**
+	 * Lazily decided values for antiQuicksort.
+	 */
+	static class adversary {
+		final int[] values;
+		final int gas;
+		int solid = 0;
+		int candidate = -1;
+
+		adversary(int n) {
+			gas = n;
+			values = new int[n];
+			Arrays.fill(values, gas);
+		}
+
+		/**
+		 * Compares items x and y, freezing one of them if both are gas.
+		 */
+		int compare(int x, int y) {
+			if (values[x] == gas && values[y] == gas) {
+				if (x == candidate) {
+					values[x] = solid++;
+				} else {
+					values[y] = solid++;
+				}
+			}
+			if (values[x] == gas) {
+				candidate = x;
+			} else if (values[y] == gas) {
+				candidate = y;
+			}
+			return Integer.compare(values[x], values[y]);
+		}
+
+		//Mirror of quicksort.medianOfThreeIndex, comparing items in the same order.
+		int medianOfThree(int items[], int i, int j, int k) {
+			int a = items[i], b = items[j], c = items[k];
+			if (compare(a, b) < 0) {
+				if (compare(b, c) < 0) {
+					return j;
+				}
+				return compare(a, c) < 0 ? k : i;
+			} else {
+				if (compare(a, c) < 0) {
+					return i;
+				}
+				return compare(b, c) < 0 ? k : j;
+			}
+		}
+
+		//Mirror of quicksort.ninther.
+		int ninther(int items[], int low, int high) {
+			int eighth = (high - low + 1) >>> 3;
+			int mid = (low + high) >>> 1;
+			int m1 = medianOfThree(items, low, low + eighth, low + 2 * eighth);
+			int m2 = medianOfThree(items, mid - eighth, mid, mid + eighth);
+			int m3 = medianOfThree(items, high - 2 * eighth, high - eighth, high);
+			return medianOfThree(items, m1, m2, m3);
+		}
+	}
+
+	/**
+	 * Generates a named distribution with default shape parameters.
+	 * @param distribution one of DISTRIBUTIONS
+	 * @param n array length
+	 * @param seed random seed, ignored by the deterministic shapes
+	 * @return the generated array
+	 */
+	public static int[] generate(String distribution, int n, long seed) {
+		switch (distribution) {
+			case "random":
+				return random(n, seed);
+			case "sorted":
+				return ascending(n);
+			case "reversed":
+				return descending(n);
+			case "sawtooth":
+				return sawtooth(n, Math.max(1, (int) Math.sqrt(n)));
+			case "organPipe":
+				return organPipe(n);
+			case "nearlySorted":
+				return nearlySorted(n, Math.max(1, n / 100), seed);
+			case "fewUnique":
+				return fewUnique(n, 16, seed);
+			case "zipfian":
+				return zipfian(n, Math.max(1, n), 1.0, seed);
+			case "antiquicksort":
+				return antiQuicksort(n, "adaptive");
+			default:
+				throw new IllegalArgumentException("Unknown distribution: " + distribution);
+		}
+	}
+
+	/**
+	 * main method writes a generated distribution as a binary int file that externalSort can read.
+	 * @param args "<distribution> <count> <seed> <outFile>"
+	 */
+	public static void main(String[] args) {
+		if (args.length < 4) {
+			System.out.println("Usage: <distribution> <count> <seed> <outFile>. Distributions: " + Arrays.toString(DISTRIBUTIONS));
+			System.exit(0);
+		}
+		long start = System.nanoTime();
+		int[] a = generate(args[0], Integer.parseInt(args[1]), Long.parseLong(args[2]));
+		System.out.println("Generated " + a.length + " " + args[0] + " ints in " + (System.nanoTime() - start) / 1000000 + " ms.");
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(externalSort.MERGE_BUFFER_BYTES);
+		try (FileChannel output = FileChannel.open(Paths.get(args[3]), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			int written = 0;
+			while (written < a.length) {
+				buffer.clear();
+				int count = Math.min(a.length - written, buffer.capacity() / 4);
+				buffer.asIntBuffer().put(a, written, count);
+				buffer.limit(count * 4);
+				while (buffer.hasRemaining()) {
+					output.write(buffer);
+				}
+				written += count;
+			}
+		} catch (IOException x) {
+			System.err.format("IOException: %s%n", x);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package quicksort;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author cyrus
+ * Interface sortProbe is the instrumentation hook called by the sort engines.
+ * <p>
+ * Engines report comparisons and swaps in batches (once per partition, insertion sort
+ * or sift, not once per inner-loop step), every partition with its size, the offset of
+ * the pivot and the recursion depth, and radix passes with the bytes they moved.
+ * <p>
+ * The engines call quicksort.probe, which is a static final constant. By default it
+ * is a switchable probe, which forwards to whichever probe is installed (NONE unless
+ * processArrays or a caller installs a recorder). Each call then costs a load of the
+ * installed target and a type check, once per batch. Run with -Dquicksort.probe=false
+ * to make quicksort.probe the constant NONE: the JIT then folds every probe call to
+ * nothing, but no counts are recorded.
+ */
+public interface sortProbe {
+
+	/**
+	 * The no-op probe.
+	 */
+	sortProbe NONE = new sortProbe() {};
+
+	/**
+	 * @param n number of key comparisons performed
+	 */
+	default void compare(int n) {}
+
+	/**
+	 * @param n number of element swaps or moves performed
+	 */
+	default void swap(int n) {}
+
+	/**
+	 * Called once per partitioning step.
+	 * @param size number of elements in the partitioned range
+	 * @param left number of elements that ended up left of the pivot(s)
+	 * @param depth recursion depth of the range, 0 for the whole input
+	 */
+	default void partition(int size, int left, int depth) {}
+
+	/**
+	 * Called once per radix sort.
+	 * @param passes number of scatter passes performed
+	 * @param bytesMoved number of bytes written by those passes and any copy back
+	 */
+	default void radix(int passes, long bytesMoved) {}
+
+	/**
+	 * Probe that forwards to a replaceable target, so quicksort.probe can stay a
+	 * constant while recorders are swapped in and out. The target is a plain field:
+	 * install it before starting a sort, not while one is running.
+	 */
+	class switchable implements sortProbe {
+		private sortProbe target = NONE;
+
+		/**
+		 * @param probe probe to forward to from now on
+		 * @return the probe that was installed before
+		 */
+		public sortProbe install(sortProbe probe) {
+			sortProbe previous = target;
+			target = probe;
+			return previous;
+		}
+
+		@Override
+		public void compare(int n) {
+			target.compare(n);
+		}
+
+		@Override
+		public void swap(int n) {
+			target.swap(n);
+		}
+
+		@Override
+		public void partition(int size, int left, int depth) {
+			target.partition(size, left, depth);
+		}
+
+		@Override
+		public void radix(int passes, long bytesMoved) {
+			target.radix(passes, bytesMoved);
+		}
+	}
+
+	/**
+	 * Recording probe. Counters are long and the histograms are atomic, so one recorder
+	 * can be shared by every thread of a parallel sort.
+	 */
+	class recorder implements sortProbe {
+
+		/**
+		 * Number of partition-balance buckets. Bucket b counts partitions whose smaller
+		 * side held between b/20 and (b+1)/20 of the range, so bucket 9 is a near-even split.
+		 */
+		public static final int BALANCE_BUCKETS = 10;
+
+		/**
+		 * Depths at or beyond this are counted in the last depth bucket.
+		 */
+		public static final int MAX_DEPTH = 128;
+
+		private final LongAdder comparisons = new LongAdder();
+		private final LongAdder swaps = new LongAdder();
+		private final LongAdder partitions = new LongAdder();
+		private final LongAdder passes = new LongAdder();
+		private final LongAdder bytesMoved = new LongAdder();
+		private final AtomicLongArray depthHistogram = new AtomicLongArray(MAX_DEPTH);
+		private final AtomicLongArray balanceHistogram = new AtomicLongArray(BALANCE_BUCKETS);
+
+		@Override
+		public void compare(int n) {
+			comparisons.add(n);
+		}
+
+		@Override
+		public void swap(int n) {
+			swaps.add(n);
+		}
+
+		@Override
+		public void partition(int size, int left, int depth) {
+			partitions.increment();
+			depthHistogram.incrementAndGet(Math.min(depth, MAX_DEPTH - 1));
+			if (size > 1) {
+				long smaller = Math.min(left, size - 1 - left);
+				balanceHistogram.incrementAndGet((int) Math.min(BALANCE_BUCKETS - 1, 2 * BALANCE_BUCKETS * smaller / size));
+			}
+		}
+
+		@Override
+		public void radix(int n, long bytes) {
+			passes.add(n);
+			bytesMoved.add(bytes);
+		}
+
+		/**
+		 * Clears every counter and histogram.
+		 */
+		public void reset() {
+			comparisons.reset();
+			swaps.reset();
+			partitions.reset();
+			passes.reset();
+			bytesMoved.reset();
+			for (int i = 0; i < MAX_DEPTH; i++) {
+				depthHistogram.set(i, 0);
+			}
+			for (int i = 0; i < BALANCE_BUCKETS; i++) {
+				balanceHistogram.set(i, 0);
+			}
+		}
+
+		public long comparisons() {
+			return comparisons.sum();
+		}
+
+		public long swaps() {
+			return swaps.sum();
+		}
+
+		public long partitions() {
+			return partitions.sum();
+		}
+
+		public long passes() {
+			return passes.sum();
+		}
+
+		public long bytesMoved() {
+			return bytesMoved.sum();
+		}
+
+		/**
+		 * @param depth recursion depth
+		 * @return number of partitions performed at that depth
+		 */
+		public long partitionsAtDepth(int depth) {
+			return depthHistogram.get(Math.min(depth, MAX_DEPTH - 1));
+		}
+
+		/**
+		 * @param bucket balance bucket, 0 to BALANCE_BUCKETS - 1
+		 * @return number of partitions that fell into it
+		 */
+		public long partitionsWithBalance(int bucket) {
+			return balanceHistogram.get(bucket);
+		}
+
+		/**
+		 * @return the deepest recursion depth at which a partition was recorded.
+		 */
+		public int maxDepth() {
+			for (int i = MAX_DEPTH - 1; i >= 0; i--) {
+				if (depthHistogram.get(i) > 0) {
+					return i;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @return a multi-line summary of the counters and both histograms.
+		 */
+		public String histograms() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Partitions: ").append(partitions()).append(", max depth: ").append(maxDepth()).append('\n');
+			sb.append("Balance (smaller side / range):\n");
+			for (int b = 0; b < BALANCE_BUCKETS; b++) {
+				sb.append(String.format("  %4.2f-%4.2f: %d%n", b / (2.0 * BALANCE_BUCKETS),
+						(b + 1) / (2.0 * BALANCE_BUCKETS), balanceHistogram.get(b)));
+			}
+			sb.append("Depth:\n");
+			int max = maxDepth();
+			for (int d = 0; d <= max; d++) {
+				sb.append(String.format("  %3d: %d%n", d, depthHistogram.get(d)));
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,498 @@
+package assignmentOne;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import assignmentOne.assignmentOne.Pair;
+import assignmentOne.assignmentOne.Point;
+
+/**
+ * @author cyrus
+ * Class spatialIndex implements a persistent 2D k-d tree over a point set.
+ * <p>
+ * The tree is implicit: points are stored in k-d order so that the node for the
+ * index range [lo, hi) is the point at mid = (lo + hi) / 2, its left subtree is
+ * [lo, mid) and its right subtree is [mid + 1, hi). The split axis alternates
+ * x, y, x... with depth. Because there are no pointers, the file is just a small
+ * header followed by packed (x, y) int coordinates, and it can be memory mapped
+ * and queried directly without deserialization.
+ * <p>
+ * File layout (big endian):
+ * 	int magic, int version, long count, int minX, int minY, int maxX, int maxY,
+ * 	followed by count (x, y) int pairs.
+ * <p>
+ * Squared distances are compared in long arithmetic, so every coordinate (indexed
+ * or queried) must lie in [-MAX_COORD, MAX_COORD]. Differences then stay below
+ * 2^31 and dx * dx + dy * dy below 2^63. build() and nearest() reject anything
+ * outside that range rather than return a wrong answer.
+ */
+class spatialIndex implements Closeable {
+
+	//File header constants
+	static final int MAGIC = 0x4B445431;	//"KDT1"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+
+	//Largest coordinate magnitude for which squared distances cannot overflow a long.
+	static final int MAX_COORD = (1 << 30) - 1;
+
+	//Points are mapped in windows of 2^27 points (1 GB) so files larger than 2 GB can be mapped.
+	static final int WINDOW_SHIFT = 27;
+	static final int WINDOW_MASK = (1 << WINDOW_SHIFT) - 1;
+
+	//Below this many points a subtree is scanned linearly instead of descended.
+	static final int LEAF_SIZE = 8;
+
+	private final FileChannel channel;
+	private final IntBuffer[] windows;
+	private final int count;
+	private final int minX, minY, maxX, maxY;
+
+	/**
+	 * Private constructor. Use open() to map an existing index file.
+	 */
+	private spatialIndex(FileChannel channel, IntBuffer[] windows, int count, int minX, int minY, int maxX, int maxY) {
+		this.channel = channel;
+		this.windows = windows;
+		this.count = count;
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	/**
+	 * Builds an index file from a list of Points.
+	 * @param points the points to be indexed
+	 * @param indexFile path of the index file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void build(List<Point> points, String indexFile) throws IOException {
+		int[] xs = new int[points.size()];
+		int[] ys = new int[points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			xs[i] = points.get(i).x;
+			ys[i] = points.get(i).y;
+		}
+		build(xs, ys, xs.length, indexFile);
+	}
+
+	/**
+	 * Builds an index file from packed coordinate arrays. The arrays are reordered
+	 * in place into k-d order.
+	 * @param xs x-coordinates
+	 * @param ys y-coordinates
+	 * @param n number of points in use in xs and ys
+	 * @param indexFile path of the index file to write
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a coordinate lies outside [-MAX_COORD, MAX_COORD]
+	 */
+	public static void build(int[] xs, int[] ys, int n, String indexFile) throws IOException {
+		//Find the bounding box for the header.
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		if (n > 0 && !(inRange(minX) && inRange(maxX) && inRange(minY) && inRange(maxY))) {
+			throw new IllegalArgumentException("Coordinates must lie in [" + -MAX_COORD + ", " + MAX_COORD + "], got ("
+					+ minX + ", " + minY + ") - (" + maxX + ", " + maxY + ")");
+		}
+
+		//Arrange the points into implicit k-d order.
+		arrange(xs, ys, 0, n, 0);
+
+		//Write the header and the packed coordinates through one large direct buffer.
+		try (FileChannel out = FileChannel.open(Paths.get(indexFile), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+			buf.putInt(MAGIC).putInt(VERSION).putLong(n);
+			buf.putInt(minX).putInt(minY).putInt(maxX).putInt(maxY);
+			for (int i = 0; i < n; i++) {
+				if (buf.remaining() < 8) {
+					buf.flip();
+					while (buf.hasRemaining()) {
+						out.write(buf);
+					}
+					buf.clear();
+				}
+				buf.putInt(xs[i]).putInt(ys[i]);
+			}
+			buf.flip();
+			while (buf.hasRemaining()) {
+				out.write(buf);
+			}
+		}
+	}
+
+	/**
+	 * Recursively arranges [lo, hi) so that the median along the split axis sits at mid,
+	 * smaller values to its left and larger values to its right.
+	 */
+	private static void arrange(int[] xs, int[] ys, int lo, int hi, int depth) {
+		//Loop on the right half and recurse on the left to keep the stack shallow.
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if ((depth & 1) == 0) {
+				select(xs, ys, lo, hi - 1, mid);
+			} else {
+				select(ys, xs, lo, hi - 1, mid);
+			}
+			arrange(xs, ys, lo, mid, depth + 1);
+			lo = mid + 1;
+			depth++;
+		}
+	}
+
+	/**
+	 * Quickselect on keys[low..high] that carries the other coordinate along,
+	 * leaving the k-th smallest key at index k. Partitions three ways so runs of
+	 * equal coordinates, common deep in the tree, settle in one pass instead of
+	 * shrinking the range by one key per pass.
+	 */
+	private static void select(int[] keys, int[] other, int low, int high, int k) {
+		while (high > low) {
+			//Median-of-3 pivot, then a Dutch national flag partition:
+			//[low, lt) < pivot, [lt, gt] == pivot, (gt, high] > pivot.
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < keys[low]) swapBoth(keys, other, mid, low);
+			if (keys[high] < keys[low]) swapBoth(keys, other, high, low);
+			if (keys[mid] < keys[high]) swapBoth(keys, other, mid, high);
+			int pivot = keys[high];
+			int lt = low;
+			int gt = high;
+			int i = low;
+			while (i <= gt) {
+				if (keys[i] < pivot) {
+					swapBoth(keys, other, lt++, i++);
+				} else if (keys[i] > pivot) {
+					swapBoth(keys, other, i, gt--);
+				} else {
+					i++;
+				}
+			}
+
+			if (k < lt) {
+				high = lt - 1;
+			} else if (k > gt) {
+				low = gt + 1;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swapBoth(int[] a, int[] b, int i, int j) {
+		int t = a[i]; a[i] = a[j]; a[j] = t;
+		t = b[i]; b[i] = b[j]; b[j] = t;
+	}
+
+	/**
+	 * Maps an existing index file. Only the header is read; point data is paged in
+	 * by the OS on first touch.
+	 * @param indexFile path to a file written by build()
+	 * @return the mapped index
+	 * @throws IOException if the file cannot be mapped or is not an index file
+	 */
+	public static spatialIndex open(String indexFile) throws IOException {
+		FileChannel ch = FileChannel.open(Paths.get(indexFile), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException("Not a spatial index file: " + indexFile);
+			}
+			long n = header.getLong(8);
+			if (n < 0) {
+				throw new IOException("Corrupt spatial index file, negative point count " + n + ": " + indexFile);
+			}
+			if (n > Integer.MAX_VALUE || ch.size() < HEADER_BYTES + n * 8) {
+				throw new IOException("Truncated or oversized spatial index file: " + indexFile);
+			}
+			int minX = header.getInt(16), minY = header.getInt(20), maxX = header.getInt(24), maxY = header.getInt(28);
+			if (n > 0 && !(inRange(minX) && inRange(maxX) && inRange(minY) && inRange(maxY))) {
+				throw new IOException("Corrupt spatial index file, bounding box out of range: " + indexFile);
+			}
+
+			//Map the point data in 1 GB windows.
+			long windowPoints = 1L << WINDOW_SHIFT;
+			int numWindows = (int) ((n + windowPoints - 1) / windowPoints);
+			IntBuffer[] windows = new IntBuffer[numWindows];
+			for (int w = 0; w < numWindows; w++) {
+				long first = w * windowPoints;
+				long points = Math.min(windowPoints, n - first);
+				windows[w] = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * 8, points * 8).asIntBuffer();
+			}
+			return new spatialIndex(ch, windows, (int) n, minX, minY, maxX, maxY);
+		} catch (IOException x) {
+			ch.close();
+			throw x;
+		}
+	}
+
+	/**
+	 * @return the number of indexed points.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param i index of a point in k-d order
+	 * @return the x-coordinate of point i, read from the mapping
+	 */
+	public int x(int i) {
+		return windows[i >>> WINDOW_SHIFT].get((i & WINDOW_MASK) << 1);
+	}
+
+	/**
+	 * @param i index of a point in k-d order
+	 * @return the y-coordinate of point i, read from the mapping
+	 */
+	public int y(int i) {
+		return windows[i >>> WINDOW_SHIFT].get(((i & WINDOW_MASK) << 1) + 1);
+	}
+
+	/**
+	 * @param i index of a point in k-d order
+	 * @return point i as a Point object
+	 */
+	public Point point(int i) {
+		return new Point(x(i), y(i));
+	}
+
+	/**
+	 * Search state for one nearest-neighbour query. Keeps queries allocation-light
+	 * and lets several threads query the same mapping concurrently.
+	 */
+	private static final class Search {
+		long qx, qy;
+		int exclude;
+		long bestDist = Long.MAX_VALUE;
+		int bestIndex = -1;
+	}
+
+	/**
+	 * Finds the indexed point nearest to (qx, qy).
+	 * @param qx query x-coordinate
+	 * @param qy query y-coordinate
+	 * @return index of the nearest point, or -1 if the index is empty
+	 * @throws IllegalArgumentException if qx or qy lies outside [-MAX_COORD, MAX_COORD]
+	 */
+	public int nearest(int qx, int qy) {
+		if (!inRange(qx) || !inRange(qy)) {
+			throw new IllegalArgumentException("Query (" + qx + ", " + qy + ") is outside [" + -MAX_COORD + ", " + MAX_COORD + "]");
+		}
+		Search s = new Search();
+		s.qx = qx;
+		s.qy = qy;
+		s.exclude = -1;
+		search(s, 0, count, 0);
+		return s.bestIndex;
+	}
+
+	/**
+	 * Finds the indexed point nearest to p.
+	 * @param p query point
+	 * @return the nearest Point, or null if the index is empty
+	 */
+	public Point nearest(Point p) {
+		int i = nearest(p.x, p.y);
+		return i < 0 ? null : point(i);
+	}
+
+	/**
+	 * Recursive k-d descent over the implicit tree rooted at [lo, hi).
+	 */
+	private void search(Search s, int lo, int hi, int depth) {
+		while (hi - lo > LEAF_SIZE) {
+			int mid = (lo + hi) >>> 1;
+			long mx = x(mid), my = y(mid);
+			consider(s, mid, mx, my);
+
+			//Signed distance from the query to the splitting line.
+			long delta = ((depth & 1) == 0) ? s.qx - mx : s.qy - my;
+
+			//Visit the near side first, then the far side only if the splitting line
+			//is closer than the best distance found so far.
+			if (delta < 0) {
+				search(s, lo, mid, depth + 1);
+				if (delta * delta >= s.bestDist) {
+					return;
+				}
+				lo = mid + 1;
+			} else {
+				search(s, mid + 1, hi, depth + 1);
+				if (delta * delta >= s.bestDist) {
+					return;
+				}
+				hi = mid;
+			}
+			depth++;
+		}
+
+		//Small subtree, scan it.
+		for (int i = lo; i < hi; i++) {
+			consider(s, i, x(i), y(i));
+		}
+	}
+
+	private static void consider(Search s, int i, long px, long py) {
+		if (i == s.exclude) {
+			return;
+		}
+		long dx = px - s.qx;
+		long dy = py - s.qy;
+		long d = dx * dx + dy * dy;
+		if (d < s.bestDist) {
+			s.bestDist = d;
+			s.bestIndex = i;
+		}
+	}
+
+	/**
+	 * @param c a coordinate
+	 * @return true if c lies in [-MAX_COORD, MAX_COORD], where squared distances cannot overflow
+	 */
+	static boolean inRange(int c) {
+		return c >= -MAX_COORD && c <= MAX_COORD;
+	}
+
+	/**
+	 * Finds the closest Pair among all indexed points by running a bounded
+	 * nearest-neighbour query from every point. The bound carries over between
+	 * queries, so most subtrees are pruned once a close pair has been found.
+	 * @return the closest Pair, or an empty Pair if fewer than 2 points are indexed.
+	 */
+	public Pair closestPair() {
+		Pair closest = new Pair();
+		if (count < 2) {
+			return closest;
+		}
+
+		Search s = new Search();
+		int bestA = -1, bestB = -1;
+		for (int i = 0; i < count; i++) {
+			s.qx = x(i);
+			s.qy = y(i);
+			s.exclude = i;
+			s.bestIndex = -1;
+			search(s, 0, count, 0);
+			//bestIndex only changes when a strictly closer pair was found.
+			if (s.bestIndex >= 0) {
+				bestA = i;
+				bestB = s.bestIndex;
+				if (s.bestDist == 0) {
+					break;
+				}
+			}
+		}
+		return new Pair(point(bestA), point(bestB));
+	}
+
+	/**
+	 * Releases the mapping. Buffers are unmapped when garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "spatialIndex[" + count + " points, (" + minX + ", " + minY + ") - (" + maxX + ", " + maxY + ")]";
+	}
+
+	/**
+	 * Reads points from a text file straight into packed coordinate arrays.
+	 * Same format as assignmentOne.readPoints(), without allocating a Point per line.
+	 * @param fileName path to file
+	 * @return {xs, ys} trimmed to the number of points read
+	 * @throws IOException if the file cannot be read
+	 */
+	static int[][] readPackedPoints(String fileName) throws IOException {
+		int[] xs = new int[1024];
+		int[] ys = new int[1024];
+		int n = 0;
+		try (BufferedReader br = new BufferedReader(new FileReader(fileName), 1 << 16)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] splitStr = line.trim().split("\\s+");
+				if (splitStr.length < 2) {
+					continue;
+				}
+				if (n == xs.length) {
+					xs = Arrays.copyOf(xs, n * 2);
+					ys = Arrays.copyOf(ys, n * 2);
+				}
+				xs[n] = Integer.parseInt(splitStr[0]);
+				ys[n] = Integer.parseInt(splitStr[1]);
+				n++;
+			}
+		}
+		return new int[][] { Arrays.copyOf(xs, n), Arrays.copyOf(ys, n) };
+	}
+
+	/**
+	 * Main function builds and queries index files.
+	 * @param args 	1. Specify the operation:
+	 * 					"build <pointsFile> <indexFile>" - index a points file (same format as assignmentOne)
+	 * 					"nearest <indexFile> <x> <y>" - nearest neighbour of (x, y)
+	 * 					"closest <indexFile>" - closest pair of indexed points
+	 */
+	public static void main(String[] args) {
+		//Arguments needed by each operation, including the operation itself.
+		int required = 2;
+		if (args.length > 0) {
+			switch (args[0]) {
+				case "build":
+					required = 3;
+					break;
+				case "nearest":
+					required = 4;
+					break;
+				default:
+					break;
+			}
+		}
+		if (args.length < required) {
+			System.out.println("Usage: build <pointsFile> <indexFile> | nearest <indexFile> <x> <y> | closest <indexFile>");
+			System.exit(0);
+		}
+
+		try {
+			long start = System.nanoTime();
+			switch (args[0]) {
+				case "build":
+					int[][] packed = readPackedPoints(args[1]);
+					build(packed[0], packed[1], packed[0].length, args[2]);
+					System.out.println("Indexed " + packed[0].length + " points in " + (System.nanoTime() - start) / 1000000 + " ms.");
+					break;
+				case "nearest":
+					try (spatialIndex index = open(args[1])) {
+						Point p = index.nearest(new Point(Integer.parseInt(args[2]), Integer.parseInt(args[3])));
+						System.out.println(index + " nearest: " + p);
+						System.out.println("Open + query took " + (System.nanoTime() - start) / 1000 + " us.");
+					}
+					break;
+				case "closest":
+					try (spatialIndex index = open(args[1])) {
+						Pair closest = index.closestPair();
+						System.out.println(index + " closest pair: " + closest + " " + closest.distance);
+						System.out.println("Open + query took " + (System.nanoTime() - start) / 1000000 + " ms.");
+					}
+					break;
+				default:
+					System.out.println("First argument must be one of: build, nearest, closest.");
+					break;
+			}
+		} catch (IOException x) {
+			System.err.format("IOException: %s%n", x);
+		}
+	}
+}
@@ -0,0 +1,542 @@
+package quicksort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author cyrus
+ * Class streamingSorter keeps a sorted view of an unbounded stream of ints without ever
+ * re-sorting what it has already seen.
+ * <p>
+ * Incoming keys go into a buffer of bufferSize keys. A full buffer is sorted with a
+ * quicksort engine and frozen into an immutable run on level 0. Runs are organised
+ * LSM-style: once a level holds FANOUT runs, a background thread merges them into one
+ * run on the next level, so a level-L run holds about bufferSize * FANOUT^L keys and
+ * there are only O(FANOUT * log(n)) runs at any time.
+ * <p>
+ * Readers take a snapshot: the current runs plus a sorted copy of the partly filled
+ * buffer. Runs are never modified, and a finished merge swaps its inputs for its output
+ * in one step, so a snapshot sees every key exactly once and stays valid while the
+ * sorter keeps changing. A snapshot can iterate its keys in order (a k-way heap merge
+ * over the runs) and answer rank and range-count queries by binary search in each run.
+ * <p>
+ * Latency stays bounded: a write costs at most one buffer sort, a snapshot at most one
+ * buffer copy and sort, and a query O(runs * log n). If merging falls behind, writers
+ * wait once the run count reaches MAX_RUNS rather than letting reads degrade.
+ */
+public class streamingSorter implements AutoCloseable {
+
+	/**
+	 * Runs merged together at each level.
+	 */
+	static final int FANOUT = 8;
+
+	/**
+	 * Writers block while this many runs are waiting to be merged.
+	 */
+	static final int MAX_RUNS = 16 * FANOUT;
+
+	/**
+	 * Default buffer size, in keys.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final quicksort.sortEngine engine;
+	private final int bufferSize;
+	private final ExecutorService merger;
+
+	//Guarded by this.
+	private int[] buffer;
+	private int buffered = 0;
+	private final List<List<int[]>> levels = new ArrayList<List<int[]>>();
+	private int runCount = 0;
+	private boolean mergeScheduled = false;
+	private boolean closed = false;
+	private Throwable mergeFailure = null;
+
+	//Every run, published as one immutable array so readers need no lock.
+	private volatile int[][] runs = new int[0][];
+
+	/**
+	 * Streaming sorter with the default buffer size and the adaptive engine.
+	 */
+	public streamingSorter() {
+		this(DEFAULT_BUFFER_SIZE, quicksort::adaptiveSort);
+	}
+
+	/**
+	 * @param bufferSize keys buffered before they are sorted into a run
+	 * @param engine engine used to sort each full buffer
+	 */
+	public streamingSorter(int bufferSize, quicksort.sortEngine engine) {
+		this.bufferSize = bufferSize;
+		this.engine = engine;
+		this.buffer = new int[bufferSize];
+		this.merger = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "streamingSorter-merge");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Adds one key.
+	 * @param key the key
+	 */
+	public synchronized void add(int key) {
+		checkWritable();
+		buffer[buffered++] = key;
+		if (buffered == bufferSize) {
+			flushBuffer();
+		}
+	}
+
+	/**
+	 * Adds a batch of keys.
+	 * @param keys the keys
+	 */
+	public synchronized void addAll(int keys[]) {
+		checkWritable();
+		int i = 0;
+		while (i < keys.length) {
+			int count = Math.min(keys.length - i, bufferSize - buffered);
+			System.arraycopy(keys, i, buffer, buffered, count);
+			buffered += count;
+			i += count;
+			if (buffered == bufferSize) {
+				flushBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Turns the buffered keys into a run now, even if the buffer is not full.
+	 */
+	public synchronized void flush() {
+		checkWritable();
+		if (buffered > 0) {
+			flushBuffer();
+		}
+	}
+
+	//Throws if the sorter is closed or a background merge has failed. Caller holds the lock.
+	private void checkWritable() {
+		if (closed) {
+			throw new IllegalStateException("streamingSorter is closed");
+		}
+		if (mergeFailure != null) {
+			throw new IllegalStateException("Background merge failed", mergeFailure);
+		}
+	}
+
+	//Sorts the buffer into a level-0 run. Caller holds the lock.
+	private void flushBuffer() {
+		while (runCount >= MAX_RUNS && !closed && mergeFailure == null) {
+			try {
+				wait();
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		//The merger is gone, so this run would never be merged; keep the keys buffered.
+		if (mergeFailure != null) {
+			throw new IllegalStateException("Background merge failed", mergeFailure);
+		}
+		int[] run = buffered == bufferSize ? buffer : Arrays.copyOf(buffer, buffered);
+		engine.sort(run, 0, run.length - 1);
+		if (levels.isEmpty()) {
+			levels.add(new ArrayList<int[]>());
+		}
+		levels.get(0).add(run);
+		runCount++;
+		publish();
+		buffer = new int[bufferSize];
+		buffered = 0;
+		scheduleMerge();
+	}
+
+	//Caller holds the lock.
+	private void scheduleMerge() {
+		if (mergeScheduled || closed || mergeFailure != null) {
+			return;
+		}
+		for (List<int[]> level : levels) {
+			if (level.size() >= FANOUT) {
+				mergeScheduled = true;
+				merger.execute(this::mergeLevels);
+				return;
+			}
+		}
+	}
+
+	//Caller holds the lock.
+	private void publish() {
+		List<int[]> all = new ArrayList<int[]>();
+		for (int l = levels.size() - 1; l >= 0; l--) {
+			all.addAll(levels.get(l));
+		}
+		runs = all.toArray(new int[0][]);
+	}
+
+	/**
+	 * Background task: merges full levels until none are left. The inputs stay visible
+	 * to readers until the merged run replaces them. If a merge throws, the failure is
+	 * kept and rethrown to writers, and blocked writers are woken, so nobody waits on a
+	 * merger that has died.
+	 */
+	private void mergeLevels() {
+		try {
+			mergeFullLevels();
+		} catch (RuntimeException | Error x) {
+			synchronized (this) {
+				mergeFailure = x;
+			}
+		} finally {
+			synchronized (this) {
+				mergeScheduled = false;
+				notifyAll();
+				//A level may have filled up after the last check; scheduleMerge skips it if failed.
+				scheduleMerge();
+			}
+		}
+	}
+
+	private void mergeFullLevels() {
+		while (true) {
+			int level = -1;
+			int[][] inputs;
+			synchronized (this) {
+				for (int l = 0; l < levels.size(); l++) {
+					if (levels.get(l).size() >= FANOUT) {
+						level = l;
+						break;
+					}
+				}
+				if (level < 0 || closed) {
+					return;
+				}
+				inputs = levels.get(level).subList(0, FANOUT).toArray(new int[0][]);
+			}
+
+			int[] merged = mergeRuns(inputs);
+
+			synchronized (this) {
+				levels.get(level).subList(0, FANOUT).clear();
+				if (levels.size() == level + 1) {
+					levels.add(new ArrayList<int[]>());
+				}
+				levels.get(level + 1).add(merged);
+				runCount -= FANOUT - 1;
+				publish();
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * K-way merge of sorted runs with a binary min-heap kept in two int arrays
+	 * (next key, run), as in externalSort.merge.
+	 * @param inputs sorted runs
+	 * @return a new sorted run holding every key of the inputs
+	 */
+	static int[] mergeRuns(int[][] inputs) {
+		int k = inputs.length;
+		long total = 0;
+		for (int[] run : inputs) {
+			total += run.length;
+		}
+		int[] merged = new int[Math.toIntExact(total)];
+		int[] positions = new int[k];
+		int[] heapKey = new int[k];
+		int[] heapRun = new int[k];
+		int size = 0;
+		for (int r = 0; r < k; r++) {
+			if (inputs[r].length > 0) {
+				heapKey[size] = inputs[r][0];
+				heapRun[size] = r;
+				positions[r] = 1;
+				siftUp(heapKey, heapRun, size++);
+			}
+		}
+
+		int out = 0;
+		while (size > 0) {
+			merged[out++] = heapKey[0];
+			int r = heapRun[0];
+			if (positions[r] < inputs[r].length) {
+				heapKey[0] = inputs[r][positions[r]++];
+			} else {
+				size--;
+				heapKey[0] = heapKey[size];
+				heapRun[0] = heapRun[size];
+			}
+			siftDown(heapKey, heapRun, 0, size);
+		}
+		return merged;
+	}
+
+	private static void siftUp(int heapKey[], int heapRun[], int i) {
+		int key = heapKey[i];
+		int run = heapRun[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heapKey[parent] <= key) {
+				break;
+			}
+			heapKey[i] = heapKey[parent];
+			heapRun[i] = heapRun[parent];
+			i = parent;
+		}
+		heapKey[i] = key;
+		heapRun[i] = run;
+	}
+
+	private static void siftDown(int heapKey[], int heapRun[], int i, int size) {
+		int key = heapKey[i];
+		int run = heapRun[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heapKey[child + 1] < heapKey[child]) {
+				child++;
+			}
+			if (heapKey[child] >= key) {
+				break;
+			}
+			heapKey[i] = heapKey[child];
+			heapRun[i] = heapRun[child];
+			i = child;
+		}
+		heapKey[i] = key;
+		heapRun[i] = run;
+	}
+
+	/**
+	 * Takes a consistent, immutable view of every key added so far.
+	 * @return the snapshot
+	 */
+	public snapshot snapshot() {
+		int[][] current;
+		int[] tail;
+		synchronized (this) {
+			current = runs;
+			tail = Arrays.copyOf(buffer, buffered);
+		}
+		if (tail.length > 0) {
+			engine.sort(tail, 0, tail.length - 1);
+			current = Arrays.copyOf(current, current.length + 1);
+			current[current.length - 1] = tail;
+		}
+		return new snapshot(current);
+	}
+
+	/**
+	 * @return number of runs currently published, a measure of read cost.
+	 */
+	public int runCount() {
+		return runs.length;
+	}
+
+	/**
+	 * Stops the background merger. Runs already published stay readable through snapshots.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		merger.shutdown();
+		try {
+			merger.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Immutable sorted view over a set of sorted runs.
+	 */
+	public static class snapshot implements Iterable<Integer> {
+		private final int[][] runs;
+		private final long size;
+
+		snapshot(int[][] runs) {
+			this.runs = runs;
+			long total = 0;
+			for (int[] run : runs) {
+				total += run.length;
+			}
+			this.size = total;
+		}
+
+		/**
+		 * @return number of keys in the snapshot
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * @param key the key
+		 * @return number of keys strictly less than key
+		 */
+		public long rank(int key) {
+			long rank = 0;
+			for (int[] run : runs) {
+				rank += lowerBound(run, key);
+			}
+			return rank;
+		}
+
+		/**
+		 * @param low smallest key counted
+		 * @param high largest key counted
+		 * @return number of keys in [low, high]
+		 */
+		public long count(int low, int high) {
+			if (low > high) {
+				return 0;
+			}
+			long count = 0;
+			for (int[] run : runs) {
+				int end = high == Integer.MAX_VALUE ? run.length : lowerBound(run, high + 1);
+				count += end - lowerBound(run, low);
+			}
+			return count;
+		}
+
+		/**
+		 * @return the keys in ascending order, without boxing if used through nextInt.
+		 */
+		@Override
+		public PrimitiveIterator.OfInt iterator() {
+			return new mergeIterator(runs);
+		}
+
+		/**
+		 * @return every key in ascending order
+		 */
+		public int[] toArray() {
+			return mergeRuns(runs);
+		}
+
+		//Index of the first key >= key in a sorted run.
+		private static int lowerBound(int run[], int key) {
+			int lo = 0;
+			int hi = run.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (run[mid] < key) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * Lazy k-way merge over sorted runs, using the same heap as mergeRuns.
+	 */
+	static class mergeIterator implements PrimitiveIterator.OfInt {
+		private final int[][] runs;
+		private final int[] positions;
+		private final int[] heapKey;
+		private final int[] heapRun;
+		private int size = 0;
+
+		mergeIterator(int[][] runs) {
+			this.runs = runs;
+			positions = new int[runs.length];
+			heapKey = new int[runs.length];
+			heapRun = new int[runs.length];
+			for (int r = 0; r < runs.length; r++) {
+				if (runs[r].length > 0) {
+					heapKey[size] = runs[r][0];
+					heapRun[size] = r;
+					positions[r] = 1;
+					siftUp(heapKey, heapRun, size++);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return size > 0;
+		}
+
+		@Override
+		public int nextInt() {
+			if (size == 0) {
+				throw new NoSuchElementException();
+			}
+			int key = heapKey[0];
+			int r = heapRun[0];
+			if (positions[r] < runs[r].length) {
+				heapKey[0] = runs[r][positions[r]++];
+			} else {
+				size--;
+				heapKey[0] = heapKey[size];
+				heapRun[0] = heapRun[size];
+			}
+			siftDown(heapKey, heapRun, 0, size);
+			return key;
+		}
+	}
+
+	/**
+	 * main method streams random keys into a sorter, taking snapshots along the way, and
+	 * reports the worst write and snapshot latencies.
+	 * @param args "<keys> [snapshotEvery]"
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 50_000_000;
+		int snapshotEvery = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+		Random rd = new Random(sortBenchmark.SEED);
+		int[] input = new int[n];
+		for (int i = 0; i < n; i++) {
+			input[i] = rd.nextInt();
+		}
+
+		long worstWrite = 0;
+		long worstSnapshot = 0;
+		long worstQuery = 0;
+		long start = System.nanoTime();
+		try (streamingSorter sorter = new streamingSorter()) {
+			for (int i = 0; i < n; i++) {
+				long t = System.nanoTime();
+				sorter.add(input[i]);
+				worstWrite = Math.max(worstWrite, System.nanoTime() - t);
+
+				if ((i + 1) % snapshotEvery == 0) {
+					t = System.nanoTime();
+					snapshot view = sorter.snapshot();
+					worstSnapshot = Math.max(worstSnapshot, System.nanoTime() - t);
+					t = System.nanoTime();
+					long below = view.rank(0);
+					worstQuery = Math.max(worstQuery, System.nanoTime() - t);
+					System.out.println((i + 1) + " keys, " + sorter.runCount() + " runs, " + below + " negative.");
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+
+			int[] sorted = sorter.snapshot().toArray();
+			Arrays.sort(input);
+			System.out.println(Arrays.equals(input, sorted) ? "Final snapshot matches Arrays.sort." : "Final snapshot DOES NOT match Arrays.sort.");
+			System.out.println("Streamed " + n + " keys in " + elapsed / 1000000 + " ms. Worst write " + worstWrite / 1000
+					+ " us, worst snapshot " + worstSnapshot / 1000 + " us, worst rank query " + worstQuery / 1000 + " us.");
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package quicksort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author cyrus
+ * Class vectorPartition is a SIMD partition kernel for quicksort.quickSort, written with
+ * the incubating Vector API.
+ * <p>
+ * Each step loads one vector of keys, compares all lanes against the broadcast pivot at
+ * once, and uses the resulting mask to compress the keys <= pivot into the left side of
+ * the array and the keys > pivot into a scratch buffer. The left side can be written in
+ * place because it never runs ahead of the vector just loaded. Once the range is done
+ * the pivot is dropped in after the left side and the buffer is copied in after it.
+ * <p>
+ * Compress is a single instruction (vpcompressd) on AVX-512. With narrower or no SIMD
+ * support, or on small ranges, the stock scalar loop is used instead.
+ * <p>
+ * Needs JDK 19 or later for compress, so this class is not part of a plain JDK 17 build
+ * of the package. Compile it on its own with the others on the classpath, and run it
+ * with the incubator module added:
+ * 	javac --add-modules jdk.incubator.vector -cp out -d out vectorPartition.java
+ * 	java --add-modules jdk.incubator.vector -cp out quicksort.vectorPartition
+ */
+public class vectorPartition {
+
+	static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	/**
+	 * Whether the preferred species is wide enough to beat the scalar loop.
+	 */
+	static final boolean AVAILABLE = SPECIES.length() >= 8;
+
+	/**
+	 * Ranges smaller than this are partitioned by the scalar loop.
+	 */
+	static final int VECTOR_THRESHOLD = 128;
+
+	/**
+	 * Quicksort with the vector kernel for large ranges. Same signature as the
+	 * quicksort engines.
+	 * @param inputArray array containing values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 */
+	public static void sort(int inputArray[], int low, int high) {
+		if (!AVAILABLE || high - low + 1 < VECTOR_THRESHOLD) {
+			quicksort.quickSort(inputArray, low, high, quicksort.SCALAR_PARTITION);
+			return;
+		}
+		//One buffer serves every partition: ranges only shrink as the sort recurses.
+		int[] scratch = new int[high - low + 1 + SPECIES.length()];
+		quicksort.quickSort(inputArray, low, high, (a, lo, hi) -> hi - lo + 1 < VECTOR_THRESHOLD
+				? quicksort.partition(a, lo, hi) : partition(a, lo, hi, scratch));
+	}
+
+	/**
+	 * Vectorized partition of [low, high] around the pivot at inputArray[high].
+	 * Same contract as quicksort.partition.
+	 * @param inputArray array of values to be sorted
+	 * @param low lower index
+	 * @param high upper index
+	 * @param scratch buffer of at least high - low + SPECIES.length() ints
+	 * @return final index of the pivot
+	 */
+	public static int partition(int inputArray[], int low, int high, int scratch[]) {
+		int pivot = inputArray[high];
+		IntVector pivots = IntVector.broadcast(SPECIES, pivot);
+		int lanes = SPECIES.length();
+		int left = low;
+		int right = 0;
+		int i = low;
+
+		//Whole vectors. Each store writes a full vector, but only the first count lanes
+		//matter and the rest land on keys that have already been loaded.
+		for (; i <= high - lanes; i += lanes) {
+			IntVector keys = IntVector.fromArray(SPECIES, inputArray, i);
+			VectorMask<Integer> smaller = keys.compare(VectorOperators.LE, pivots);
+			int count = smaller.trueCount();
+			keys.compress(smaller).intoArray(inputArray, left);
+			keys.compress(smaller.not()).intoArray(scratch, right);
+			left += count;
+			right += lanes - count;
+		}
+
+		//Leftover keys, one at a time.
+		for (; i < high; i++) {
+			int key = inputArray[i];
+			if (key <= pivot) {
+				inputArray[left++] = key;
+			} else {
+				scratch[right++] = key;
+			}
+		}
+
+		inputArray[left] = pivot;
+		System.arraycopy(scratch, 0, inputArray, left + 1, right);
+		quicksort.probe.compare(high - low);
+		quicksort.probe.swap(high - low + right);
+		return left;
+	}
+
+	/**
+	 * main method compares the vector kernel with the scalar one and with Arrays.sort.
+	 * @param args "<count> [rounds]"
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		System.out.println("Species " + SPECIES + ", vector kernel " + (AVAILABLE ? "enabled." : "disabled, using the scalar fallback."));
+
+		int[] input = new int[n];
+		Random rd = new Random(sortBenchmark.SEED);
+		for (int i = 0; i < n; i++) {
+			input[i] = rd.nextInt();
+		}
+		int[] expected = input.clone();
+		Arrays.sort(expected);
+
+		for (int round = 0; round < rounds; round++) {
+			int[] vector = input.clone();
+			long start = System.nanoTime();
+			sort(vector, 0, n - 1);
+			long vectorNanos = System.nanoTime() - start;
+
+			int[] scalar = input.clone();
+			start = System.nanoTime();
+			quicksort.quickSort(scalar, 0, n - 1, quicksort.SCALAR_PARTITION);
+			long scalarNanos = System.nanoTime() - start;
+
+			int[] library = input.clone();
+			start = System.nanoTime();
+			Arrays.sort(library);
+			long libraryNanos = System.nanoTime() - start;
+
+			if (!Arrays.equals(expected, vector) || !Arrays.equals(expected, scalar)) {
+				System.out.println("Sort mismatch in round " + round + ".");
+				return;
+			}
+			System.out.println("Round " + round + ": vector " + vectorNanos / 1000000 + " ms, scalar "
+					+ scalarNanos / 1000000 + " ms, Arrays.sort " + libraryNanos / 1000000 + " ms.");
+		}
+	}
+}